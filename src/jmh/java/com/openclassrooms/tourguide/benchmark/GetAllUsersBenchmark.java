@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.user.User;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class GetAllUsersBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public int userCount;
+
+	private TourGuideService tourGuideService;
+
+	@Setup
+	public void setUp() {
+		StubGpsUtil gpsUtil = new StubGpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new StubRewardCentral());
+		InternalTestHelper.setInternalUserNumber(userCount);
+		tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		// Le Tracker consommerait du CPU pendant la mesure
+		tourGuideService.tracker.stopTracking();
+	}
+
+	@TearDown
+	public void tearDown() {
+		tourGuideService.tracker.stopTracking();
+	}
+
+	@Benchmark
+	public List<User> getAllUsers() {
+		return tourGuideService.getAllUsers();
+	}
+}
@@ -0,0 +1,98 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Location;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot.GeoPoint;
+import com.openclassrooms.tourguide.attraction.BoundingBox;
+import com.openclassrooms.tourguide.service.RewardsService;
+
+/**
+ * Test de proximité de positions aléatoires contre toutes les attractions :
+ * formule exacte seule, ou précédée du filtre par rectangle englobant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProximityFilterBenchmark {
+	private static final int LOCATIONS = 1024;
+
+	@Param({ "10", "200" })
+	public double radiusMiles;
+
+	private AttractionSnapshot snapshot;
+	private GeoPoint[] points;
+	private BoundingBox[] boxes;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		StubGpsUtil gpsUtil = new StubGpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new StubRewardCentral());
+		snapshot = rewardsService.getAttractionCatalog().getSnapshot();
+		SplittableRandom random = new SplittableRandom(42);
+		points = new GeoPoint[LOCATIONS];
+		boxes = new BoundingBox[LOCATIONS];
+		for (int i = 0; i < LOCATIONS; i++) {
+			Location location = new Location(random.nextDouble(-85, 85), random.nextDouble(-180, 180));
+			points[i] = GeoPoint.of(location);
+			boxes[i] = BoundingBox.around(location, radiusMiles);
+		}
+	}
+
+	@Benchmark
+	public int exactOnly() {
+		GeoPoint point = points[next++ & (LOCATIONS - 1)];
+		int near = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (snapshot.getDistance(i, point) <= radiusMiles) {
+				near++;
+			}
+		}
+		return near;
+	}
+
+	@Benchmark
+	public int boundingBoxThenExact() {
+		int n = next++ & (LOCATIONS - 1);
+		GeoPoint point = points[n];
+		BoundingBox box = boxes[n];
+		int near = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (snapshot.isWithin(i, point, box, radiusMiles)) {
+				near++;
+			}
+		}
+		return near;
+	}
+
+	@Benchmark
+	public int boundingBoxIncludingConstruction() {
+		GeoPoint point = points[next++ & (LOCATIONS - 1)];
+		BoundingBox box = BoundingBox.around(point.location(), radiusMiles);
+		int near = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			if (snapshot.isWithin(i, point, box, radiusMiles)) {
+				near++;
+			}
+		}
+		return near;
+	}
+}
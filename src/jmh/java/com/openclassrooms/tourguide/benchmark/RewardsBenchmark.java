@@ -0,0 +1,76 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
+
+/**
+ * calculateRewardsAsync sur un utilisateur dont l'historique contient historySize positions :
+ * recalcul complet de l'historique et calcul incrémental après l'ajout d'une position.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewardsBenchmark {
+	@Param({ "3", "100" })
+	public int historySize;
+
+	private RewardsService rewardsService;
+	private User user;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		StubGpsUtil gpsUtil = new StubGpsUtil();
+		rewardsService = new RewardsService(gpsUtil, new StubRewardCentral());
+		user = new User(UUID.randomUUID(), "bench", "000", "bench@tourGuide.com", new RetentionPolicy(historySize, null));
+		for (int i = 0; i < historySize; i++) {
+			user.addToVisitedLocations(randomLocation(user));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		rewardsService.getAttractionCatalog().stop();
+	}
+
+	@Benchmark
+	public void calculateRewardsFullRescan() {
+		rewardsService.calculateRewardsAsync(user, true).join();
+	}
+
+	@Benchmark
+	public void calculateRewardsIncremental() {
+		user.addToVisitedLocations(randomLocation(user));
+		rewardsService.calculateRewardsAsync(user).join();
+	}
+
+	private static VisitedLocation randomLocation(User user) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return new VisitedLocation(user.getUserId(),
+				new Location(random.nextDouble(-85, 85), random.nextDouble(-180, 180)), new Date());
+	}
+}
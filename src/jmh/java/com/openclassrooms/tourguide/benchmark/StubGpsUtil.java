@@ -0,0 +1,31 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * GpsUtil sans latence ni limitation de débit, pour mesurer uniquement le code TourGuide.
+ */
+public class StubGpsUtil extends GpsUtil {
+	private final List<Attraction> attractions = super.getAttractions();
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Location location = new Location(random.nextDouble(-85.05112878, 85.05112878), random.nextDouble(-180, 180));
+		return new VisitedLocation(userId, location, new Date());
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return new ArrayList<>(attractions);
+	}
+}
@@ -0,0 +1,16 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.UUID;
+
+import rewardCentral.RewardCentral;
+
+/**
+ * RewardCentral sans latence : les points sont dérivés des identifiants.
+ */
+public class StubRewardCentral extends RewardCentral {
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		return 1 + Math.floorMod(attractionId.hashCode() ^ userId.hashCode(), 1000);
+	}
+}
@@ -0,0 +1,55 @@
+package com.openclassrooms.tourguide.benchmark;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+
+/**
+ * User.addUserReward appelé par plusieurs threads sur le même utilisateur (cas du Tracker croisant les appels REST).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class UserRewardContentionBenchmark {
+	private User user;
+	private UserReward[] rewards;
+
+	@Setup
+	public void setUp() {
+		List<Attraction> attractions = new StubGpsUtil().getAttractions();
+		user = new User(UUID.randomUUID(), "bench", "000", "bench@tourGuide.com");
+		rewards = new UserReward[attractions.size()];
+		for (int i = 0; i < rewards.length; i++) {
+			Attraction attraction = attractions.get(i);
+			rewards[i] = new UserReward(new VisitedLocation(user.getUserId(), attraction, new Date()), attraction, 10);
+		}
+	}
+
+	@Benchmark
+	public void addUserReward() {
+		user.addUserReward(rewards[ThreadLocalRandom.current().nextInt(rewards.length)]);
+	}
+}
@@ -1,13 +1,31 @@
 package com.openclassrooms.tourguide;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 
 import com.openclassrooms.tourguide.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.dto.UserLocationDTO;
 import gpsUtil.location.VisitedLocation;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
@@ -16,6 +34,11 @@ import tripPricer.Provider;
 
 @RestController
 public class TourGuideController {
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final JsonFactory JSON_FACTORY = new JsonFactoryBuilder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .rootValueSeparator((String) null)
+            .build();
 
     @Autowired
     TourGuideService tourGuideService;
@@ -25,16 +48,33 @@ public class TourGuideController {
         return "Greetings from TourGuide!";
     }
 
+    /*
+     * Les endpoints qui dépendent de GpsUtil, RewardCentral ou TripPricer renvoient un CompletableFuture :
+     * le thread Tomcat est libéré pendant l'attente et la réponse est écrite à la fin du futur.
+     * L'échéance d'une requête est réglée par spring.mvc.async.request-timeout.
+     */
+
     @RequestMapping("/getLocation")
-    public VisitedLocation getLocation(@RequestParam String userName) {
-        return tourGuideService.getUserLocation(getUser(userName));
+    public CompletableFuture<VisitedLocation> getLocation(@RequestParam String userName) {
+        return tourGuideService.getUserLocationAsync(getUser(userName));
     }
 
+    /**
+     * Positions d'un lot d'utilisateurs (noms ou userId) en une seule requête, avec un statut par utilisateur.
+     */
+    @PostMapping("/getLocations")
+    public CompletableFuture<List<UserLocationDTO>> getLocations(@RequestBody List<String> users) {
+        return tourGuideService.getUserLocationsAsync(users);
+    }
+
+    /**
+     * Les k attractions les plus proches de l'utilisateur (5 par défaut), avec les points de récompense associés.
+     */
     @RequestMapping("/getNearbyAttractions")
-    public List<NearbyAttractionDTO> getNearbyAttractions(@RequestParam String userName) {
-        User user = getUser(userName);
-        VisitedLocation visitedLocation = tourGuideService.getUserLocation(user);
-        return tourGuideService.getNearByAttractions(visitedLocation);
+    public CompletableFuture<List<NearbyAttractionDTO>> getNearbyAttractions(@RequestParam String userName,
+            @RequestParam(defaultValue = "" + TourGuideService.DEFAULT_NEARBY_ATTRACTIONS) int k) {
+        return tourGuideService.getUserLocationAsync(getUser(userName))
+                .thenCompose(visitedLocation -> tourGuideService.getNearByAttractionsAsync(visitedLocation, k));
     }
 
     @RequestMapping("/getRewards")
@@ -43,8 +83,48 @@ public class TourGuideController {
     }
 
     @RequestMapping("/getTripDeals")
-    public List<Provider> getTripDeals(@RequestParam String userName) {
-        return tourGuideService.getTripDeals(getUser(userName));
+    public CompletableFuture<List<Provider>> getTripDeals(@RequestParam String userName) {
+        return tourGuideService.getTripDealsAsync(getUser(userName));
+    }
+
+    /**
+     * Export en flux (NDJSON, une ligne par utilisateur) des positions courantes de tous les utilisateurs.
+     * Les lignes sont écrites au fil du parcours du stock de positions : mémoire constante, et l'écriture bloque
+     * tant que le client ne consomme pas (contre-pression assurée par le flux de sortie).
+     */
+    @RequestMapping("/exportLocations")
+    public ResponseEntity<StreamingResponseBody> exportLocations() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8)) {
+                tourGuideService.getPositionStore().forEach((userId, latitude, longitude, timeMillis) ->
+                        writeLocation(generator, userId, latitude, longitude, timeMillis));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    private void writeLocation(JsonGenerator generator, UUID userId, double latitude, double longitude, long timeMillis) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("userId", userId.toString());
+            generator.writeNumberField("lat", latitude);
+            generator.writeNumberField("lon", longitude);
+            generator.writeNumberField("timestamp", timeMillis);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Paramètre hors bornes (taille de lot, nombre d'attractions), y compris quand l'erreur survient dans un futur.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
     }
 
     private User getUser(String userName) {
@@ -1,28 +1,94 @@
 package com.openclassrooms.tourguide;
 
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import gpsUtil.GpsUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.attraction.AttractionCatalog;
+import com.openclassrooms.tourguide.cache.RewardPointsCache;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
 import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
 
 @Configuration
+@EnableConfigurationProperties(TourGuideProperties.class)
 public class TourGuideModule {
+
+	@Autowired
+	private TourGuideProperties properties;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// Partagé par le cache des points et les calculs de récompenses ; pas un bean : un bean ExecutorService
+	// remplacerait l'applicationTaskExecutor de Spring MVC
+	private ExecutorService rewardsExecutor;
 	
 	@Bean
 	public GpsUtil getGpsUtil() {
 		return new GpsUtil();
 	}
 	
+	@Bean(destroyMethod = "stop")
+	public AttractionCatalog getAttractionCatalog() {
+		TourGuideProperties.Attractions attractions = properties.getAttractions();
+		return new AttractionCatalog(getGpsUtil(), attractions.getRefreshInterval(), attractions.getCellSizeDegrees(),
+				meterRegistry);
+	}
+	
+	@Bean
+	public RewardPointsCache getRewardPointsCache() {
+		TourGuideProperties.RewardPointsCache cache = properties.getRewardPointsCache();
+		return new RewardPointsCache(getRewardCentral(), cache.getMaximumSize(), cache.getTtl(), getRewardsExecutor(),
+				meterRegistry);
+	}
+	
 	@Bean
 	public RewardsService getRewardsService() {
-		return new RewardsService(getGpsUtil(), getRewardCentral());
+		return new RewardsService(getRewardCentral(), getAttractionCatalog(), getRewardPointsCache(),
+				getRewardsExecutor());
 	}
 	
 	@Bean
 	public RewardCentral getRewardCentral() {
 		return new RewardCentral();
 	}
+
+	private synchronized ExecutorService getRewardsExecutor() {
+		if (rewardsExecutor == null) {
+			TourGuideProperties.Execution execution = properties.getExecution();
+			rewardsExecutor = TaskExecutors.create("rewards", execution.getMode(), execution.getRewardsConcurrency(),
+					meterRegistry);
+		}
+		return rewardsExecutor;
+	}
+	
+	/**
+	 * Indicateur userPopulation, inclus dans le groupe readiness : hors service tant que la population
+	 * initiale est en cours de chargement.
+	 */
+	@Bean(name = "userPopulationHealthIndicator")
+	public HealthIndicator getUserPopulationHealthIndicator(TourGuideService tourGuideService) {
+		return () -> {
+			Health.Builder health;
+			if (tourGuideService.isUsersLoaded()) {
+				health = Health.up();
+			} else if (tourGuideService.getUsersLoaded().isCompletedExceptionally()) {
+				health = Health.down();
+			} else {
+				health = Health.outOfService();
+			}
+			return health.withDetail("users", tourGuideService.getUserCount()).build();
+		};
+	}
 	
 }
@@ -0,0 +1,102 @@
+package com.openclassrooms.tourguide.attraction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Catalogue des attractions chargé une fois depuis GpsUtil puis rechargé périodiquement.
+ * Chaque rechargement publie une nouvelle AttractionSnapshot de façon atomique : les lecteurs
+ * travaillent toujours sur une photographie complète et cohérente.
+ */
+public class AttractionCatalog {
+	private Logger logger = LoggerFactory.getLogger(AttractionCatalog.class);
+
+	private final GpsUtil gpsUtil;
+	private final double cellSizeDegrees;
+	private final ScheduledExecutorService scheduler;
+	private final Timer getAttractionsTimer;
+	private volatile AttractionSnapshot snapshot;
+
+	public AttractionCatalog(GpsUtil gpsUtil) {
+		this(gpsUtil, Duration.ofHours(1), AttractionIndex.DEFAULT_CELL_SIZE_DEGREES);
+	}
+
+	public AttractionCatalog(GpsUtil gpsUtil, Duration refreshInterval, double cellSizeDegrees) {
+		this(gpsUtil, refreshInterval, cellSizeDegrees, Metrics.globalRegistry);
+	}
+
+	public AttractionCatalog(GpsUtil gpsUtil, Duration refreshInterval, double cellSizeDegrees, MeterRegistry registry) {
+		this.gpsUtil = gpsUtil;
+		this.getAttractionsTimer = TourGuideMetrics.externalCallTimer(registry, "gpsUtil", "getAttractions");
+		this.cellSizeDegrees = cellSizeDegrees;
+		this.snapshot = load(null);
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "attraction-catalog-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long intervalMillis = refreshInterval.toMillis();
+		scheduler.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public AttractionSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public List<Attraction> getAttractions() {
+		return snapshot.getAttractions();
+	}
+
+	/**
+	 * Recharge la liste depuis GpsUtil. En cas d'erreur la photographie courante est conservée.
+	 */
+	public void refresh() {
+		try {
+			snapshot = load(snapshot);
+			logger.debug("Attraction catalog refreshed: " + snapshot.size() + " attractions.");
+		} catch (RuntimeException e) {
+			logger.warn("Attraction catalog refresh failed, keeping previous snapshot", e);
+		}
+	}
+
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * GpsUtil génère un nouvel attractionId à chaque appel : on réutilise les instances de la photographie
+	 * précédente quand le nom et les coordonnées sont inchangés, pour que les identifiants restent stables.
+	 */
+	private AttractionSnapshot load(AttractionSnapshot previous) {
+		Map<String, Attraction> previousByName = new HashMap<>();
+		if (previous != null) {
+			previous.getAttractions().forEach(a -> previousByName.put(a.attractionName, a));
+		}
+		List<Attraction> attractions = new ArrayList<>();
+		for (Attraction attraction : getAttractionsTimer.record(gpsUtil::getAttractions)) {
+			Attraction known = previousByName.get(attraction.attractionName);
+			boolean unchanged = known != null && known.latitude == attraction.latitude
+					&& known.longitude == attraction.longitude;
+			attractions.add(unchanged ? known : attraction);
+		}
+		return new AttractionSnapshot(attractions, cellSizeDegrees, System.currentTimeMillis());
+	}
+}
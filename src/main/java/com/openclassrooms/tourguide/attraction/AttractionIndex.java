@@ -0,0 +1,141 @@
+package com.openclassrooms.tourguide.attraction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+/**
+ * Index spatial des attractions sous forme de grille latitude/longitude.
+ * Chaque attraction est rangée dans une seule cellule ; une recherche ne parcourt
+ * que les cellules qui recoupent le rayon demandé.
+ * Les candidats renvoyés forment un sur-ensemble des attractions réellement proches :
+ * l'appelant doit toujours confirmer avec le calcul de distance exact.
+ */
+public class AttractionIndex {
+	public static final double DEFAULT_CELL_SIZE_DEGREES = 1.0;
+
+	private final List<Attraction> attractions;
+	private final double cellSizeDegrees;
+	private final int latCells;
+	private final int lonCells;
+	private final int[][] cells;
+
+	public AttractionIndex(List<Attraction> attractions) {
+		this(attractions, DEFAULT_CELL_SIZE_DEGREES);
+	}
+
+	public AttractionIndex(List<Attraction> attractions, double cellSizeDegrees) {
+		if (cellSizeDegrees <= 0) {
+			throw new IllegalArgumentException("cellSizeDegrees must be positive: " + cellSizeDegrees);
+		}
+		this.attractions = Collections.unmodifiableList(new ArrayList<>(attractions));
+		this.cellSizeDegrees = cellSizeDegrees;
+		this.latCells = (int) Math.ceil(180 / cellSizeDegrees);
+		this.lonCells = (int) Math.ceil(360 / cellSizeDegrees);
+
+		int[] counts = new int[latCells * lonCells];
+		int[] cellOf = new int[this.attractions.size()];
+		for (int i = 0; i < cellOf.length; i++) {
+			Attraction attraction = this.attractions.get(i);
+			cellOf[i] = latCell(attraction.latitude) * lonCells + lonCell(attraction.longitude);
+			counts[cellOf[i]]++;
+		}
+		this.cells = new int[counts.length][];
+		for (int i = 0; i < cellOf.length; i++) {
+			int cell = cellOf[i];
+			if (cells[cell] == null) {
+				cells[cell] = new int[counts[cell]];
+				counts[cell] = 0;
+			}
+			cells[cell][counts[cell]++] = i;
+		}
+	}
+
+	public List<Attraction> getAttractions() {
+		return attractions;
+	}
+
+	public Attraction get(int index) {
+		return attractions.get(index);
+	}
+
+	public int size() {
+		return attractions.size();
+	}
+
+	/**
+	 * Appelle le consumer avec l'indice de chaque attraction susceptible d'être à moins de
+	 * radiusMiles de la position donnée. Chaque indice est fourni au plus une fois.
+	 */
+	public void forEachCandidate(Location location, double radiusMiles, IntConsumer consumer) {
+		forEachCandidate(BoundingBox.around(location, radiusMiles), consumer);
+	}
+
+	/**
+	 * Variante pour un rectangle déjà calculé (réutilisé ensuite comme filtre par l'appelant).
+	 */
+	public void forEachCandidate(BoundingBox box, IntConsumer consumer) {
+		if (box.coversAllLatitudes()) {
+			forEachAttraction(consumer);
+			return;
+		}
+
+		int latFrom = latCell(box.getMinLat());
+		int latTo = latCell(box.getMaxLat());
+		if (box.getLonDegrees() >= 180) {
+			forEachCell(latFrom, latTo, 0, lonCells - 1, consumer);
+			return;
+		}
+		// Bornes ramenées dans [-180, 180[ en degrés avant le calcul des colonnes : quand la taille de cellule
+		// ne divise pas 360, la dernière colonne est plus étroite et un décalage en nombre de cellules tomberait à côté
+		int west = lonCell(box.getCenterLon() - box.getLonDegrees());
+		int east = lonCell(box.getCenterLon() + box.getLonDegrees());
+		if (west <= east && box.getLonDegrees() * 2 < 360 - cellSizeDegrees) {
+			forEachCell(latFrom, latTo, west, east, consumer);
+		} else if (west > east) {
+			// Rectangle à cheval sur l'antiméridien
+			forEachCell(latFrom, latTo, west, lonCells - 1, consumer);
+			forEachCell(latFrom, latTo, 0, east, consumer);
+		} else {
+			forEachCell(latFrom, latTo, 0, lonCells - 1, consumer);
+		}
+	}
+
+	private void forEachCell(int latFrom, int latTo, int lonFrom, int lonTo, IntConsumer consumer) {
+		for (int lat = latFrom; lat <= latTo; lat++) {
+			int rowOffset = lat * lonCells;
+			for (int lon = lonFrom; lon <= lonTo; lon++) {
+				int[] cell = cells[rowOffset + lon];
+				if (cell != null) {
+					for (int index : cell) {
+						consumer.accept(index);
+					}
+				}
+			}
+		}
+	}
+
+	private void forEachAttraction(IntConsumer consumer) {
+		for (int i = 0; i < attractions.size(); i++) {
+			consumer.accept(i);
+		}
+	}
+
+	private int latCell(double latitude) {
+		int cell = (int) Math.floor((latitude + 90) / cellSizeDegrees);
+		return Math.max(0, Math.min(latCells - 1, cell));
+	}
+
+	private int lonCell(double longitude) {
+		double wrapped = (longitude + 180) % 360;
+		if (wrapped < 0) {
+			wrapped += 360;
+		}
+		int cell = (int) Math.floor(wrapped / cellSizeDegrees);
+		return Math.min(lonCells - 1, cell);
+	}
+}
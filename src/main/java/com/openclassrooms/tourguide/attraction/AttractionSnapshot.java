@@ -0,0 +1,100 @@
+package com.openclassrooms.tourguide.attraction;
+
+import java.util.List;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+/**
+ * Photographie immuable du catalogue d'attractions.
+ * Les coordonnées sont stockées dans des tableaux primitifs avec les radians, sin(lat) et cos(lat)
+ * déjà calculés : un calcul de distance ne coûte plus qu'un cos et un acos par attraction.
+ */
+public final class AttractionSnapshot {
+	private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
+
+	private final AttractionIndex index;
+	private final double[] latDegrees;
+	private final double[] lonDegrees;
+	private final double[] lonRadians;
+	private final double[] sinLat;
+	private final double[] cosLat;
+	private final long loadedAt;
+
+	AttractionSnapshot(List<Attraction> attractions, double cellSizeDegrees, long loadedAt) {
+		this.index = new AttractionIndex(attractions, cellSizeDegrees);
+		int size = index.size();
+		this.latDegrees = new double[size];
+		this.lonDegrees = new double[size];
+		this.lonRadians = new double[size];
+		this.sinLat = new double[size];
+		this.cosLat = new double[size];
+		for (int i = 0; i < size; i++) {
+			Attraction attraction = index.get(i);
+			double lat = Math.toRadians(attraction.latitude);
+			latDegrees[i] = attraction.latitude;
+			lonDegrees[i] = attraction.longitude;
+			lonRadians[i] = Math.toRadians(attraction.longitude);
+			sinLat[i] = Math.sin(lat);
+			cosLat[i] = Math.cos(lat);
+		}
+		this.loadedAt = loadedAt;
+	}
+
+	public List<Attraction> getAttractions() {
+		return index.getAttractions();
+	}
+
+	public Attraction get(int i) {
+		return index.get(i);
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	public AttractionIndex getIndex() {
+		return index;
+	}
+
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	/**
+	 * Distance en miles entre l'attraction d'indice i et une position.
+	 * Même formule (et même résultat) que RewardsService.getDistance.
+	 */
+	public double getDistance(int i, Location location) {
+		return getDistance(i, GeoPoint.of(location));
+	}
+
+	public double getDistance(int i, GeoPoint point) {
+		double angle = Math.acos(
+				sinLat[i] * point.sinLat()
+						+ cosLat[i] * point.cosLat() * Math.cos(lonRadians[i] - point.lonRadians())
+		);
+		double nauticalMiles = 60 * Math.toDegrees(angle);
+		return STATUTE_MILES_PER_NAUTICAL_MILE * nauticalMiles;
+	}
+
+	/**
+	 * Vrai si l'attraction d'indice i est à au plus radiusMiles du point : même résultat que
+	 * getDistance(i, point) <= radiusMiles, mais les attractions hors du rectangle englobant
+	 * (calculé une fois pour le point et le rayon) sont écartées sans trigonométrie.
+	 */
+	public boolean isWithin(int i, GeoPoint point, BoundingBox box, double radiusMiles) {
+		return box.contains(latDegrees[i], lonDegrees[i]) && getDistance(i, point) <= radiusMiles;
+	}
+
+	/**
+	 * Position utilisateur convertie une seule fois, pour la comparer à toutes les attractions.
+	 */
+	public record GeoPoint(Location location, double sinLat, double cosLat, double lonRadians) {
+
+		public static GeoPoint of(Location location) {
+			double lat = Math.toRadians(location.latitude);
+			return new GeoPoint(location, Math.sin(lat), Math.cos(lat), Math.toRadians(location.longitude));
+		}
+	}
+}
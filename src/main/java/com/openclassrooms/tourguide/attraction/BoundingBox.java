@@ -0,0 +1,91 @@
+package com.openclassrooms.tourguide.attraction;
+
+import gpsUtil.location.Location;
+
+/**
+ * Rectangle latitude/longitude qui contient tous les points situés à moins d'un rayon donné d'une position.
+ * Sert de filtre préalable au calcul de distance exact : un point hors du rectangle est forcément trop loin,
+ * un point dans le rectangle doit encore être confirmé par la formule exacte.
+ * Les bornes sont élargies d'une marge pour absorber les erreurs d'arrondi de acos près de 1.
+ */
+public final class BoundingBox {
+	// 1 degré d'arc = 60 milles nautiques, converti en miles terrestres comme dans RewardsService.getDistance
+	static final double STATUTE_MILES_PER_DEGREE = 60 * 1.15077945;
+	// Marge de sécurité (en degrés)
+	static final double MARGIN_DEGREES = 1e-4;
+
+	private final double minLat;
+	private final double maxLat;
+	private final double centerLon;
+	// Demi-largeur en longitude, ou infini si toutes les longitudes sont possibles
+	private final double lonDegrees;
+
+	private BoundingBox(double minLat, double maxLat, double centerLon, double lonDegrees) {
+		this.minLat = minLat;
+		this.maxLat = maxLat;
+		this.centerLon = centerLon;
+		this.lonDegrees = lonDegrees;
+	}
+
+	public static BoundingBox around(Location location, double radiusMiles) {
+		double radiusDegrees = radiusDegrees(radiusMiles);
+		if (radiusDegrees >= 180 || Double.isNaN(radiusDegrees)) {
+			return new BoundingBox(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, location.longitude,
+					Double.POSITIVE_INFINITY);
+		}
+		double minLat = location.latitude - radiusDegrees;
+		double maxLat = location.latitude + radiusDegrees;
+		// Si le rayon englobe un pôle, toutes les longitudes sont possibles
+		double lonDegrees = Double.POSITIVE_INFINITY;
+		if (minLat > -90 && maxLat < 90) {
+			double ratio = Math.sin(Math.toRadians(radiusDegrees)) / Math.cos(Math.toRadians(location.latitude));
+			if (ratio < 1) {
+				lonDegrees = Math.toDegrees(Math.asin(ratio)) * (1 + 1e-9) + MARGIN_DEGREES;
+			}
+		}
+		return new BoundingBox(minLat, maxLat, location.longitude, lonDegrees);
+	}
+
+	/**
+	 * Filtre sans trigonométrie pour un couple de points isolé : faux si l'écart de latitude suffit à prouver
+	 * que les points sont à plus de radiusMiles l'un de l'autre.
+	 */
+	public static boolean latitudeBandContains(double latitude1, double latitude2, double radiusMiles) {
+		return !(Math.abs(latitude1 - latitude2) > radiusDegrees(radiusMiles));
+	}
+
+	private static double radiusDegrees(double radiusMiles) {
+		return radiusMiles / STATUTE_MILES_PER_DEGREE + MARGIN_DEGREES;
+	}
+
+	public boolean contains(double latitude, double longitude) {
+		if (latitude < minLat || latitude > maxLat) {
+			return false;
+		}
+		if (lonDegrees >= 180) {
+			return true;
+		}
+		double delta = Math.abs(longitude - centerLon) % 360;
+		return Math.min(delta, 360 - delta) <= lonDegrees;
+	}
+
+	public boolean coversAllLatitudes() {
+		return minLat == Double.NEGATIVE_INFINITY;
+	}
+
+	public double getMinLat() {
+		return minLat;
+	}
+
+	public double getMaxLat() {
+		return maxLat;
+	}
+
+	public double getCenterLon() {
+		return centerLon;
+	}
+
+	public double getLonDegrees() {
+		return lonDegrees;
+	}
+}
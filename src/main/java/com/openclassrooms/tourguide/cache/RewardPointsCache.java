@@ -0,0 +1,115 @@
+package com.openclassrooms.tourguide.cache;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import rewardCentral.RewardCentral;
+
+/**
+ * Cache borné des points de récompense, devant RewardCentral.
+ * La clé est le couple (attractionId, userId) ; les entrées sont évincées au-delà de maximumSize
+ * et, si un TTL est fourni, après ce délai. Deux demandes simultanées pour la même clé
+ * ne déclenchent qu'un seul appel à RewardCentral.
+ * L'appel à RewardCentral s'exécute sur l'executor fourni, hors du verrou de la table du cache : les autres clés
+ * ne l'attendent pas. Un échec n'est pas conservé en cache.
+ */
+public class RewardPointsCache {
+	public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+
+	private final RewardCentral rewardCentral;
+	private final Executor executor;
+	private final AsyncCache<Key, Integer> cache;
+	private final Timer rewardCentralTimer;
+
+	public RewardPointsCache(RewardCentral rewardCentral) {
+		this(rewardCentral, DEFAULT_MAXIMUM_SIZE, null);
+	}
+
+	public RewardPointsCache(RewardCentral rewardCentral, long maximumSize, Duration ttl) {
+		this(rewardCentral, maximumSize, ttl, Metrics.globalRegistry);
+	}
+
+	/**
+	 * @param ttl durée de vie d'une entrée, ou null / zéro pour ne pas expirer
+	 */
+	public RewardPointsCache(RewardCentral rewardCentral, long maximumSize, Duration ttl, MeterRegistry registry) {
+		this(rewardCentral, maximumSize, ttl, TaskExecutors.create("rewardPoints", ExecutionMode.PLATFORM,
+				new TourGuideProperties.Execution().getRewardsConcurrency(), registry), registry);
+	}
+
+	/**
+	 * @param ttl durée de vie d'une entrée, ou null / zéro pour ne pas expirer
+	 * @param executor exécuteur des appels à RewardCentral
+	 */
+	public RewardPointsCache(RewardCentral rewardCentral, long maximumSize, Duration ttl, Executor executor,
+			MeterRegistry registry) {
+		this.rewardCentral = rewardCentral;
+		this.executor = executor;
+		this.rewardCentralTimer = TourGuideMetrics.externalCallTimer(registry, "rewardCentral", "getAttractionRewardPoints");
+		Caffeine<Object, Object> builder = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.executor(executor)
+				.recordStats();
+		if (ttl != null && !ttl.isZero()) {
+			builder.expireAfterWrite(ttl);
+		}
+		this.cache = builder.buildAsync();
+		CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "rewardPoints");
+	}
+
+	public CompletableFuture<Integer> getRewardPointsAsync(UUID attractionId, UUID userId) {
+		return cache.get(new Key(attractionId, userId), this::load);
+	}
+
+	/**
+	 * Variante bloquante, pour les appelants qui ont déjà leur propre thread (tests, benchmarks).
+	 */
+	public int getRewardPoints(UUID attractionId, UUID userId) {
+		try {
+			return getRewardPointsAsync(attractionId, userId).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Statistiques cumulées : hits, misses, évictions, temps de chargement.
+	 */
+	public CacheStats getStats() {
+		return cache.synchronous().stats();
+	}
+
+	public long size() {
+		return cache.synchronous().estimatedSize();
+	}
+
+	public void invalidateAll() {
+		cache.synchronous().invalidateAll();
+	}
+
+	private CompletableFuture<Integer> load(Key key, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> rewardCentralTimer.record(
+				() -> rewardCentral.getAttractionRewardPoints(key.attractionId(), key.userId())), this.executor);
+	}
+
+	private record Key(UUID attractionId, UUID userId) {
+	}
+}
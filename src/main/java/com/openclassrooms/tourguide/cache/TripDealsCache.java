@@ -0,0 +1,97 @@
+package com.openclassrooms.tourguide.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPreferences;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+
+/**
+ * Cache borné des offres de voyage, devant TripPricer.
+ * La clé reprend tous les paramètres de TripPricer.getPrice : utilisateur, préférences et total des points de récompense.
+ * Un changement de préférences ou une nouvelle récompense donne donc une nouvelle clé ; l'ancienne entrée
+ * finit évincée par la taille maximale ou le TTL. Deux demandes simultanées pour la même clé
+ * ne déclenchent qu'un seul appel à TripPricer.
+ */
+public class TripDealsCache {
+	private final TripPricer tripPricer;
+	private final String apiKey;
+	private final Executor executor;
+	private final AsyncCache<Key, List<Provider>> cache;
+	private final Timer getPriceTimer;
+
+	/**
+	 * @param ttl durée de vie d'une entrée, ou null / zéro pour ne pas expirer
+	 * @param executor exécuteur des appels à TripPricer
+	 */
+	public TripDealsCache(TripPricer tripPricer, String apiKey, long maximumSize, Duration ttl, Executor executor,
+			MeterRegistry registry) {
+		this.tripPricer = tripPricer;
+		this.apiKey = apiKey;
+		this.executor = executor;
+		this.getPriceTimer = TourGuideMetrics.externalCallTimer(registry, "tripPricer", "getPrice");
+		Caffeine<Object, Object> builder = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.executor(executor)
+				.recordStats();
+		if (ttl != null && !ttl.isZero()) {
+			builder.expireAfterWrite(ttl);
+		}
+		this.cache = builder.buildAsync();
+		CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "tripDeals");
+	}
+
+	/**
+	 * Offres correspondant à l'état courant de l'utilisateur, depuis le cache ou calculées par TripPricer.
+	 */
+	public CompletableFuture<List<Provider>> getTripDeals(User user) {
+		return cache.get(keyOf(user), this::load);
+	}
+
+	/**
+	 * Précalcule en arrière-plan les offres pour l'état courant de l'utilisateur (par exemple après une nouvelle
+	 * récompense), puis les enregistre sur l'utilisateur. Sans effet si l'entrée est déjà en cache ou en cours de calcul.
+	 */
+	public void refresh(User user) {
+		Key key = keyOf(user);
+		if (cache.getIfPresent(key) == null) {
+			cache.get(key, this::load).thenAccept(user::setTripDeals);
+		}
+	}
+
+	public CacheStats getStats() {
+		return cache.synchronous().stats();
+	}
+
+	public long size() {
+		return cache.synchronous().estimatedSize();
+	}
+
+	private CompletableFuture<List<Provider>> load(Key key, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> getPriceTimer.record(() -> tripPricer.getPrice(apiKey, key.userId(),
+				key.adults(), key.children(), key.tripDuration(), key.rewardPoints())), this.executor);
+	}
+
+	private static Key keyOf(User user) {
+		UserPreferences preferences = user.getUserPreferences();
+		int rewardPoints = user.getUserRewards().stream().mapToInt(i -> i.getRewardPoints()).sum();
+		return new Key(user.getUserId(), preferences.getNumberOfAdults(), preferences.getNumberOfChildren(),
+				preferences.getTripDuration(), rewardPoints);
+	}
+
+	private record Key(UUID userId, int adults, int children, int tripDuration, int rewardPoints) {
+	}
+}
@@ -0,0 +1,70 @@
+package com.openclassrooms.tourguide.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Disjoncteur autour d'un service externe.
+ * Après failureThreshold échecs consécutifs il s'ouvre : les appels sont refusés sans attendre pendant openDuration.
+ * Passé ce délai, un seul appel d'essai est autorisé (demi-ouvert) ; son succès referme le disjoncteur,
+ * son échec le rouvre pour une nouvelle période.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openNanos;
+	private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long openedAt;
+
+	public CircuitBreaker(int failureThreshold, Duration openDuration) {
+		if (failureThreshold <= 0) {
+			throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+		}
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * Vrai si l'appel peut être tenté ; l'appelant doit ensuite signaler son issue avec onSuccess ou onFailure.
+	 */
+	public boolean tryAcquirePermission() {
+		State current = state.get();
+		if (current == State.CLOSED) {
+			return true;
+		}
+		// Un seul appelant obtient l'essai en demi-ouvert
+		return current == State.OPEN && System.nanoTime() - openedAt >= openNanos
+				&& state.compareAndSet(State.OPEN, State.HALF_OPEN);
+	}
+
+	/**
+	 * Vrai tant que le disjoncteur est ouvert et que la période d'ouverture n'est pas écoulée : un appel serait refusé.
+	 * Ne consomme pas l'appel d'essai.
+	 */
+	public boolean isOpen() {
+		return state.get() == State.OPEN && System.nanoTime() - openedAt < openNanos;
+	}
+
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+	}
+
+	public void onFailure() {
+		if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			openedAt = System.nanoTime();
+			consecutiveFailures.set(0);
+			state.set(State.OPEN);
+		}
+	}
+
+	public State getState() {
+		return state.get();
+	}
+}
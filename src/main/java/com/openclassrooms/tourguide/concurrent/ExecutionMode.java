@@ -0,0 +1,11 @@
+package com.openclassrooms.tourguide.concurrent;
+
+/**
+ * Mode d'exécution des pipelines de suivi et de récompenses.
+ */
+public enum ExecutionMode {
+	// Pool fixe de threads plateforme, dimensionné pour masquer la latence de GpsUtil / RewardCentral
+	PLATFORM,
+	// Un thread virtuel par tâche (Java 21+), la concurrence étant bornée par un sémaphore
+	VIRTUAL
+}
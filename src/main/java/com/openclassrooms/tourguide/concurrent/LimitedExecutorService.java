@@ -0,0 +1,73 @@
+package com.openclassrooms.tourguide.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Décore un ExecutorService pour limiter le nombre de tâches exécutées simultanément.
+ * Pensé pour les threads virtuels : une tâche en attente de permis ne bloque qu'un thread virtuel,
+ * et les services externes ne reçoivent jamais plus de maxConcurrency appels à la fois.
+ */
+public class LimitedExecutorService extends AbstractExecutorService {
+	private final ExecutorService delegate;
+	private final Semaphore permits;
+	private final int maxConcurrency;
+
+	public LimitedExecutorService(ExecutorService delegate, int maxConcurrency) {
+		this.delegate = delegate;
+		this.permits = new Semaphore(maxConcurrency);
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		delegate.execute(() -> {
+			permits.acquireUninterruptibly();
+			try {
+				command.run();
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public int getActiveCount() {
+		return maxConcurrency - permits.availablePermits();
+	}
+
+	public int getQueueLength() {
+		return permits.getQueueLength();
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+}
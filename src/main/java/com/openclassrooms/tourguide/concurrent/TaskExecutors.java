@@ -0,0 +1,79 @@
+package com.openclassrooms.tourguide.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * Fabrique des executors utilisés par les services, selon le mode d'exécution configuré.
+ */
+public final class TaskExecutors {
+	private static final Logger logger = LoggerFactory.getLogger(TaskExecutors.class);
+
+	private TaskExecutors() {
+	}
+
+	/**
+	 * @param name        préfixe des noms de threads
+	 * @param concurrency taille du pool (PLATFORM) ou nombre maximal de tâches simultanées (VIRTUAL)
+	 */
+	public static ExecutorService create(String name, ExecutionMode mode, int concurrency) {
+		return create(name, mode, concurrency, Metrics.globalRegistry);
+	}
+
+	/**
+	 * Même chose, en publiant sur le registry les gauges executor.active / executor.queued (tag name).
+	 */
+	public static ExecutorService create(String name, ExecutionMode mode, int concurrency, MeterRegistry registry) {
+		if (mode == ExecutionMode.VIRTUAL) {
+			ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+			if (virtualExecutor != null) {
+				LimitedExecutorService limited = new LimitedExecutorService(virtualExecutor, concurrency);
+				Gauge.builder("executor.active", limited, LimitedExecutorService::getActiveCount)
+						.tag("name", name).register(registry);
+				Gauge.builder("executor.queued", limited, LimitedExecutorService::getQueueLength)
+						.tag("name", name).register(registry);
+				return limited;
+			}
+			logger.warn("Virtual threads require Java 21+ (running " + Runtime.version().feature()
+					+ "), falling back to a fixed pool for " + name);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, namedThreadFactory(name));
+		return ExecutorServiceMetrics.monitor(registry, executor, name);
+	}
+
+	public static boolean isVirtualThreadSupported() {
+		return Runtime.version().feature() >= 21;
+	}
+
+	// Le projet compile en Java 17 : l'API des threads virtuels est appelée par réflexion
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (!isVirtualThreadSupported()) {
+			return null;
+		}
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			logger.warn("Unable to create a virtual thread executor", e);
+			return null;
+		}
+	}
+
+	private static ThreadFactory namedThreadFactory(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,193 @@
+package com.openclassrooms.tourguide.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Paramètres applicatifs, préfixe "tourguide" dans application.properties.
+ * Les valeurs par défaut sont aussi celles utilisées quand les services sont construits sans Spring (tests).
+ */
+@Data
+@ConfigurationProperties(prefix = "tourguide")
+public class TourGuideProperties {
+
+	private Attractions attractions = new Attractions();
+	private RewardPointsCache rewardPointsCache = new RewardPointsCache();
+	private Execution execution = new Execution();
+	private Tracker tracker = new Tracker();
+	private History history = new History();
+	private BatchLocation batchLocation = new BatchLocation();
+	private TripDeals tripDeals = new TripDeals();
+	private NearbyAttractions nearbyAttractions = new NearbyAttractions();
+	private Gps gps = new Gps();
+	private Tracking tracking = new Tracking();
+	private Persistence persistence = new Persistence();
+	private Bootstrap bootstrap = new Bootstrap();
+	private Users users = new Users();
+	private Pipeline pipeline = new Pipeline();
+
+	@Data
+	public static class Attractions {
+		// Intervalle de rechargement du catalogue depuis GpsUtil
+		private Duration refreshInterval = Duration.ofHours(1);
+		// Taille d'une cellule de l'index spatial, en degrés
+		private double cellSizeDegrees = 1.0;
+	}
+
+	@Data
+	public static class RewardPointsCache {
+		private long maximumSize = 100_000;
+		// Durée de vie d'une entrée ; absente = pas d'expiration
+		private Duration ttl;
+	}
+
+	@Data
+	public static class Execution {
+		private ExecutionMode mode = ExecutionMode.PLATFORM;
+		// Taille du pool (PLATFORM) ou nombre maximal de tâches simultanées (VIRTUAL) des calculs de récompenses,
+		// partagé avec les appels à RewardCentral du cache des points
+		private int rewardsConcurrency = 380;
+	}
+
+	@Data
+	public static class Tracker {
+		private Duration pollingInterval = Duration.ofMinutes(5);
+		// Nombre de shards par cycle et nombre maximal de suivis en cours simultanément
+		private int shards = 16;
+		private int maxInFlight = 1000;
+		private Adaptive adaptive = new Adaptive();
+
+		@Data
+		public static class Adaptive {
+			// Intervalle de suivi propre à chaque utilisateur ; désactivé = tous les utilisateurs à chaque cycle
+			private boolean enabled = false;
+			// Bornes de l'intervalle ; minInterval absent = intervalle du Tracker
+			private Duration minInterval;
+			private Duration maxInterval = Duration.ofHours(1);
+			// Vitesse supposée d'un utilisateur immobile, qui peut repartir à tout moment (miles par heure)
+			private double minSpeedMph = 3;
+			// Marge appliquée à la vitesse estimée
+			private double speedMargin = 2;
+			// Nombre de positions récentes utilisées pour estimer la vitesse
+			private int speedWindow = 3;
+		}
+	}
+
+	@Data
+	public static class History {
+		// Nombre maximal de positions conservées par utilisateur
+		private int capacity = 100;
+		// Âge maximal d'une position conservée ; absent = pas d'expiration
+		private Duration maxAge;
+	}
+
+	@Data
+	public static class BatchLocation {
+		// Âge au-delà duquel la dernière position connue est redemandée à GpsUtil
+		private Duration maxAge = Duration.ofMinutes(5);
+		// Échéance globale d'un lot : les positions non obtenues à temps sont renvoyées en STALE (ou UNAVAILABLE)
+		private Duration deadline = Duration.ofSeconds(5);
+		private int maxBatchSize = 10_000;
+	}
+
+	@Data
+	public static class TripDeals {
+		// Appels simultanés à TripPricer (exécuteur dédié, selon tourguide.execution.mode)
+		private int concurrency = 100;
+		private long maximumSize = 10_000;
+		// Durée de vie d'une offre en cache ; absent = pas d'expiration
+		private Duration ttl = Duration.ofMinutes(30);
+	}
+
+	@Data
+	public static class NearbyAttractions {
+		// Échéance commune aux appels à RewardCentral ; les points non obtenus à temps sont renvoyés à null
+		private Duration deadline = Duration.ofSeconds(2);
+		private int maxCount = 100;
+	}
+
+	@Data
+	public static class Gps {
+		// Échéance d'un appel à GpsUtil.getUserLocation
+		private Duration timeout = Duration.ofSeconds(2);
+		// Cloison : appels simultanés au-delà desquels un appel attend sa place, au plus jusqu'à l'échéance ;
+		// c'est aussi la taille de l'exécuteur dédié aux appels GpsUtil
+		private int maxConcurrentCalls = 1000;
+		// Échecs consécutifs qui ouvrent le disjoncteur, et durée d'ouverture avant un appel d'essai
+		private int failureThreshold = 50;
+		private Duration openDuration = Duration.ofSeconds(30);
+	}
+
+	@Data
+	public static class Tracking {
+		// Âge en deçà duquel la dernière position suivie est réutilisée sans rappeler GpsUtil ; absent = toujours rappeler
+		private Duration reuseMaxAge;
+	}
+
+	@Data
+	public static class Persistence {
+		private boolean enabled = false;
+		private String directory = "data";
+		// Taille d'un segment du journal projeté en mémoire
+		private int segmentSize = 64 * 1024 * 1024;
+		// Intervalle de mise sur disque groupée du journal
+		private Duration flushInterval = Duration.ofMillis(10);
+		private Duration snapshotInterval = Duration.ofMinutes(10);
+	}
+
+	@Data
+	public static class Bootstrap {
+		public enum Mode {
+			// Population créée dans le constructeur du service
+			SYNC,
+			// Population créée en tâche de fond ; l'application n'est prête (readiness) qu'une fois chargée
+			ASYNC,
+			// Chaque utilisateur interne est créé à sa première recherche par nom
+			LAZY
+		}
+
+		private Mode mode = Mode.SYNC;
+		// Graine de génération : même graine, même population ; absente = population différente à chaque démarrage
+		private Long seed;
+		// Fichier binaire de population pré-générée : chargé s'il existe, écrit après la génération sinon
+		private String snapshotFile;
+	}
+
+	@Data
+	public static class Users {
+		// Shards du registre des utilisateurs (arrondi à une puissance de deux)
+		private int shards = 64;
+	}
+
+	@Data
+	public static class Pipeline {
+		// Enregistrement de la position (historique, positions, journal)
+		private Stage ingest = new Stage(4, 10_000);
+		// Détection des attractions proches et réservation des récompenses
+		private Stage proximity = new Stage(4, 10_000);
+		// Attente maximale d'une place dans la file de proximité ; au-delà, l'évaluation est reportée
+		private Duration handoffTimeout = Duration.ofSeconds(5);
+		// Récompenses réservées en attente de leurs points (cache puis RewardCentral, sans thread dédié) ou de leur
+		// attribution ; au-delà, la proximité attend. Pas plus que la file d'attribution, qui n'attend ainsi jamais.
+		private int pointsInFlight = 1000;
+		// Attribution et persistance des récompenses
+		private Stage grant = new Stage(2, 10_000);
+		// Attente maximale, par étape, du traitement des files à l'arrêt
+		private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+		@Data
+		@NoArgsConstructor
+		@AllArgsConstructor
+		public static class Stage {
+			private int concurrency;
+			private int queueCapacity;
+		}
+	}
+}
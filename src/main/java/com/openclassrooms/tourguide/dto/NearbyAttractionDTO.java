@@ -9,9 +9,10 @@ public class NearbyAttractionDTO {
     private Location attractionLocation;
     private Location userLocation;
     private double distanceMiles;
-    private int rewardPoints;
+    // null si RewardCentral n'a pas répondu dans l'échéance
+    private Integer rewardPoints;
 
-    public NearbyAttractionDTO(String attractionName, Location attractionLocation, Location userLocation, double distanceMiles, int rewardPoints) {
+    public NearbyAttractionDTO(String attractionName, Location attractionLocation, Location userLocation, double distanceMiles, Integer rewardPoints) {
         this.attractionName = attractionName;
         this.attractionLocation = attractionLocation;
         this.userLocation = userLocation;
@@ -38,7 +39,7 @@ public class NearbyAttractionDTO {
         this.distanceMiles = distanceMiles;
     }
 
-    public void setRewardPoints(int rewardPoints) {
+    public void setRewardPoints(Integer rewardPoints) {
         this.rewardPoints = rewardPoints;
     }
 }
@@ -0,0 +1,46 @@
+package com.openclassrooms.tourguide.dto;
+
+import java.util.Date;
+import java.util.UUID;
+
+import gpsUtil.location.Location;
+import lombok.Getter;
+
+/**
+ * Position d'un utilisateur dans une réponse de localisation par lot, avec son statut.
+ */
+@Getter
+public class UserLocationDTO {
+
+    public enum Status {
+        // Dernière position connue, assez récente pour être renvoyée sans appel à GpsUtil
+        CACHED,
+        // Position obtenue de GpsUtil pendant la requête
+        TRACKED,
+        // GpsUtil n'a pas répondu avant l'échéance du lot : dernière position connue
+        STALE,
+        // GpsUtil n'a pas répondu avant l'échéance du lot et aucune position n'est connue : location est null
+        UNAVAILABLE,
+        // L'appel à GpsUtil a échoué : dernière position connue, éventuellement absente
+        FAILED,
+        // Utilisateur inconnu
+        NOT_FOUND
+    }
+
+    private String user;
+    private UUID userId;
+    private Status status;
+    private Location location;
+    private Date timeVisited;
+
+    public UserLocationDTO(String user, UUID userId, Status status, Location location, Date timeVisited) {
+        this.user = user;
+        this.userId = userId;
+        this.status = status;
+        this.location = location;
+        this.timeVisited = timeVisited;
+    }
+
+    public UserLocationDTO() {
+    }
+}
@@ -0,0 +1,15 @@
+package com.openclassrooms.tourguide.gps;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Appel à GpsUtil qui n'a pas obtenu de place dans la cloison avant son échéance.
+ * Traduit une surcharge de l'application et non une panne de GpsUtil : pas de repli sur la dernière position connue,
+ * l'appelant voit un échec.
+ */
+public class GpsBulkheadFullException extends RejectedExecutionException {
+
+	public GpsBulkheadFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,148 @@
+package com.openclassrooms.tourguide.gps;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.openclassrooms.tourguide.concurrent.CircuitBreaker;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Appels à GpsUtil.getUserLocation protégés par une échéance, une cloison (nombre maximal d'appels simultanés)
+ * et un disjoncteur.
+ *
+ * Les appels s'exécutent sur un exécuteur dédié, dimensionné à la cloison. L'échéance court dès la soumission :
+ * un appel attend sa place dans la cloison au plus jusqu'à elle, puis échoue avec une GpsBulkheadFullException
+ * (surcharge de l'application, sans repli). Un appel commencé qui dépasse l'échéance échoue avec une
+ * TimeoutException et est interrompu ; il garde sa place jusqu'à sa vraie fin, pour que GpsUtil ne reçoive jamais
+ * plus de maxConcurrentCalls appels à la fois. Disjoncteur ouvert et échéance dépassée échouent aussitôt, sans
+ * attendre GpsUtil : l'appelant choisit son repli (en général la dernière position connue).
+ */
+public class GpsLocationClient {
+	// Avancement d'un appel : en attente d'une place, en cours auprès de GpsUtil, ou abandonné avant d'avoir commencé
+	private static final int WAITING = 0;
+	private static final int RUNNING = 1;
+	private static final int ABANDONED = 2;
+
+	private final GpsUtil gpsUtil;
+	private final ExecutorService executor;
+	private final long timeoutMillis;
+	private final Semaphore bulkhead;
+	private final CircuitBreaker circuitBreaker;
+	private final Timer getUserLocationTimer;
+	private final Counter timeouts;
+	private final Counter bulkheadRejections;
+	private final Counter circuitRejections;
+
+	public GpsLocationClient(GpsUtil gpsUtil, TourGuideProperties.Gps properties, ExecutionMode mode,
+			MeterRegistry registry) {
+		this.gpsUtil = gpsUtil;
+		this.executor = TaskExecutors.create("gps", mode, properties.getMaxConcurrentCalls(), registry);
+		this.timeoutMillis = properties.getTimeout().toMillis();
+		this.bulkhead = new Semaphore(properties.getMaxConcurrentCalls());
+		this.circuitBreaker = new CircuitBreaker(properties.getFailureThreshold(), properties.getOpenDuration());
+		this.getUserLocationTimer = TourGuideMetrics.externalCallTimer(registry, "gpsUtil", "getUserLocation");
+		this.timeouts = Counter.builder(TourGuideMetrics.GPS_FAILURES).tag("reason", "timeout").register(registry);
+		this.bulkheadRejections = Counter.builder(TourGuideMetrics.GPS_FAILURES).tag("reason", "bulkhead")
+				.register(registry);
+		this.circuitRejections = Counter.builder(TourGuideMetrics.GPS_FAILURES).tag("reason", "circuitOpen")
+				.register(registry);
+		Gauge.builder(TourGuideMetrics.GPS_CIRCUIT_STATE, circuitBreaker, breaker -> breaker.getState().ordinal())
+				.description("0 = closed, 1 = open, 2 = half-open")
+				.register(registry);
+	}
+
+	/**
+	 * Position courante de l'utilisateur. Le futur échoue, à l'échéance comptée depuis l'appel, avec une
+	 * GpsBulkheadFullException si l'appel n'a pas obtenu de place dans la cloison, ou avec une TimeoutException
+	 * si GpsUtil n'a pas répondu ; avec une RejectedExecutionException si le disjoncteur est ouvert.
+	 * Seuls les appels réellement faits à GpsUtil comptent pour le disjoncteur.
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocation(UUID userId) {
+		if (circuitBreaker.isOpen()) {
+			circuitRejections.increment();
+			return CompletableFuture.failedFuture(new RejectedExecutionException("GpsUtil circuit breaker is open"));
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		AtomicInteger state = new AtomicInteger(WAITING);
+		CompletableFuture<VisitedLocation> result = new CompletableFuture<>();
+		Future<?> task;
+		try {
+			task = executor.submit(() -> call(userId, result, state, deadline));
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		CompletableFuture<VisitedLocation> outcome = new CompletableFuture<>();
+		result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((visitedLocation, error) -> {
+			if (error == null) {
+				circuitBreaker.onSuccess();
+				outcome.complete(visitedLocation);
+			} else if (error instanceof TimeoutException && state.compareAndSet(WAITING, ABANDONED)) {
+				// Toujours en attente d'une place à l'échéance : la tâche en file n'appellera pas GpsUtil
+				task.cancel(false);
+				bulkheadRejections.increment();
+				outcome.completeExceptionally(new GpsBulkheadFullException("No GpsUtil call slot freed up within "
+						+ timeoutMillis + " ms"));
+			} else if (error instanceof RejectedExecutionException) {
+				outcome.completeExceptionally(error);
+			} else {
+				if (error instanceof TimeoutException) {
+					task.cancel(true);
+					timeouts.increment();
+				}
+				circuitBreaker.onFailure();
+				outcome.completeExceptionally(error);
+			}
+		});
+		return outcome;
+	}
+
+	private void call(UUID userId, CompletableFuture<VisitedLocation> result, AtomicInteger state, long deadline) {
+		try {
+			// Échéance atteinte avant d'avoir une place : le futur constate l'échec (son délai peut expirer un peu plus tard)
+			long remaining = deadline - System.nanoTime();
+			if (state.get() != WAITING || remaining <= 0 || !bulkhead.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			if (!state.compareAndSet(WAITING, RUNNING)) {
+				return;
+			}
+			// Permission prise au moment de l'appel : un appel d'essai en demi-ouvert est toujours suivi de son issue
+			if (!circuitBreaker.tryAcquirePermission()) {
+				circuitRejections.increment();
+				result.completeExceptionally(new RejectedExecutionException("GpsUtil circuit breaker is open"));
+				return;
+			}
+			result.complete(getUserLocationTimer.record(() -> gpsUtil.getUserLocation(userId)));
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		} finally {
+			bulkhead.release();
+		}
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+}
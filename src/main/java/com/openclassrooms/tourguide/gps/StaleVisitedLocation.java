@@ -0,0 +1,18 @@
+package com.openclassrooms.tourguide.gps;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Dernière position connue renvoyée à la place d'une position fraîche, quand GpsUtil n'a pas pu répondre.
+ * Sérialisée avec "stale": true pour que le client sache que la position n'a pas été actualisée.
+ */
+public class StaleVisitedLocation extends VisitedLocation {
+
+	public StaleVisitedLocation(VisitedLocation lastKnown) {
+		super(lastKnown.userId, lastKnown.location, lastKnown.timeVisited);
+	}
+
+	public boolean isStale() {
+		return true;
+	}
+}
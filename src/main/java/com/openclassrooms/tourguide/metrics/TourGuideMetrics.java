@@ -0,0 +1,43 @@
+package com.openclassrooms.tourguide.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Noms et fabriques des métriques TourGuide, publiées sur /actuator/prometheus.
+ */
+public final class TourGuideMetrics {
+	public static final String EXTERNAL_CALL = "tourguide.external.call";
+	public static final String TRACKER_CYCLE = "tourguide.tracker.cycle";
+	public static final String TRACKER_USERS = "tourguide.tracker.users";
+	public static final String TRACKER_FAILURES = "tourguide.tracker.failures";
+	public static final String TRACKER_SKIPPED = "tourguide.tracker.cycles.skipped";
+	public static final String TRACKER_LAG = "tourguide.tracker.lag";
+	public static final String TRACKER_IN_FLIGHT = "tourguide.tracker.in.flight";
+	public static final String TRACKER_POLLS_SAVED = "tourguide.tracker.polls.saved";
+	public static final String GPS_FAILURES = "tourguide.gps.failures";
+	public static final String GPS_CIRCUIT_STATE = "tourguide.gps.circuit.state";
+	public static final String GPS_FALLBACKS = "tourguide.gps.fallbacks";
+	public static final String TRACKING_COALESCED = "tourguide.tracking.coalesced";
+	public static final String TRACKING_REUSED = "tourguide.tracking.reused";
+	public static final String USERS = "tourguide.users";
+	public static final String USERS_SHARD_MAX = "tourguide.users.shard.max";
+	public static final String PIPELINE_STAGE = "tourguide.pipeline.stage";
+	public static final String PIPELINE_QUEUE_DEPTH = "tourguide.pipeline.queue.depth";
+	public static final String PIPELINE_DEFERRED = "tourguide.pipeline.deferred";
+
+	private TourGuideMetrics() {
+	}
+
+	/**
+	 * Timer avec histogramme de percentiles pour un appel à un service externe (GpsUtil, RewardCentral, TripPricer).
+	 */
+	public static Timer externalCallTimer(MeterRegistry registry, String service, String operation) {
+		return Timer.builder(EXTERNAL_CALL)
+				.description("Latency of calls to external services")
+				.tag("service", service)
+				.tag("operation", operation)
+				.publishPercentileHistogram()
+				.register(registry);
+	}
+}
@@ -0,0 +1,289 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal binaire en ajout seul, découpé en segments de taille fixe projetés en mémoire (MappedByteBuffer).
+ * Un enregistrement est écrit sous la forme [longueur][CRC32][contenu] : l'ajout n'est qu'une copie en mémoire,
+ * la mise sur disque (force) est faite par lots par l'appelant, qui regroupe ainsi les écritures de nombreux
+ * enregistrements en une seule synchronisation.
+ *
+ * À la relecture, un enregistrement de longueur nulle ou au CRC invalide marque la fin d'un segment :
+ * une écriture interrompue par un arrêt brutal est ignorée.
+ *
+ * Seul le segment courant est projeté en mémoire ; la relecture passe par un FileChannel. La projection d'un segment
+ * fermé est libérée explicitement avant la suppression du fichier : sous Windows, un fichier projeté ne peut pas
+ * être supprimé tant que le GC n'a pas récupéré son MappedByteBuffer.
+ */
+public class EventLog implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+	private static final int HEADER_SIZE = 8;
+	private static final String SUFFIX = ".log";
+	private static final Consumer<MappedByteBuffer> UNMAPPER = createUnmapper();
+
+	/**
+	 * Position d'un enregistrement : segment et décalage dans le segment.
+	 */
+	public record Position(long segmentId, int offset) {
+		public static final Position START = new Position(0, 0);
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private long segmentId;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private boolean dirty;
+	// Après fermeture, les projections sont libérées : plus aucun accès n'est permis
+	private boolean closed;
+	// Projections des segments fermés par roll, libérées à la suppression des segments ou à la fermeture
+	private final Map<Long, MappedByteBuffer> closedMappings = new TreeMap<>();
+	// Une projection n'est libérée (verrou d'écriture) qu'une fois terminés les force en cours (verrou de lecture) :
+	// accéder à une projection libérée ferait planter la JVM. Toujours pris avant le moniteur de l'EventLog.
+	private final ReadWriteLock mappings = new ReentrantReadWriteLock();
+
+	public EventLog(Path directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		List<Long> segments = listSegments();
+		openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1));
+		// Reprise de l'écriture après le dernier enregistrement valide
+		buffer.position(scan(buffer, 0, record -> {
+		}));
+	}
+
+	/**
+	 * Ajoute un enregistrement (copie en mémoire, sans synchronisation disque).
+	 */
+	public synchronized Position append(ByteBuffer record) {
+		ensureOpen();
+		int length = record.remaining();
+		if (HEADER_SIZE + length > segmentSize) {
+			throw new IllegalArgumentException("Record of " + length + " bytes exceeds the segment size");
+		}
+		if (buffer.remaining() < HEADER_SIZE + length) {
+			roll();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.duplicate());
+		Position position = new Position(segmentId, buffer.position());
+		buffer.putInt(length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(record);
+		dirty = true;
+		return position;
+	}
+
+	/**
+	 * Ferme le segment courant et en ouvre un nouveau.
+	 *
+	 * @return la position du début du nouveau segment
+	 */
+	public synchronized Position roll() {
+		ensureOpen();
+		try {
+			buffer.force();
+			channel.close();
+			// Un force concurrent peut encore tenir l'ancienne projection : sa libération est différée
+			closedMappings.put(segmentId, buffer);
+			openSegment(segmentId + 1);
+			dirty = false;
+			return new Position(segmentId, 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Met sur disque tous les enregistrements ajoutés depuis le dernier appel.
+	 * Les ajouts concurrents ne sont pas bloqués pendant la synchronisation.
+	 */
+	public void force() {
+		mappings.readLock().lock();
+		try {
+			MappedByteBuffer toForce;
+			synchronized (this) {
+				if (!dirty || closed) {
+					return;
+				}
+				dirty = false;
+				toForce = buffer;
+			}
+			toForce.force();
+		} finally {
+			mappings.readLock().unlock();
+		}
+	}
+
+	public synchronized Position position() {
+		return new Position(segmentId, buffer.position());
+	}
+
+	/**
+	 * Relit, dans l'ordre, tous les enregistrements à partir de la position donnée.
+	 */
+	public void replay(Position from, Consumer<ByteBuffer> handler) throws IOException {
+		for (long id : listSegments()) {
+			if (id < from.segmentId()) {
+				continue;
+			}
+			scan(read(id), id == from.segmentId() ? from.offset() : 0, handler);
+		}
+	}
+
+	/**
+	 * Supprime les segments antérieurs à celui donné (après un snapshot qui les rend inutiles).
+	 */
+	public void deleteSegmentsBefore(long segmentId) throws IOException {
+		mappings.writeLock().lock();
+		try {
+			synchronized (this) {
+				Iterator<Map.Entry<Long, MappedByteBuffer>> closed = closedMappings.entrySet().iterator();
+				while (closed.hasNext()) {
+					Map.Entry<Long, MappedByteBuffer> mapping = closed.next();
+					if (mapping.getKey() < segmentId) {
+						UNMAPPER.accept(mapping.getValue());
+						closed.remove();
+					}
+				}
+				for (long id : listSegments()) {
+					if (id < segmentId) {
+						Files.deleteIfExists(segmentPath(id));
+					}
+				}
+			}
+		} finally {
+			mappings.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		mappings.writeLock().lock();
+		try {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				buffer.force();
+				channel.close();
+				closedMappings.values().forEach(UNMAPPER);
+				closedMappings.clear();
+				UNMAPPER.accept(buffer);
+			}
+		} finally {
+			mappings.writeLock().unlock();
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("Event log is closed");
+		}
+	}
+
+	private void openSegment(long id) throws IOException {
+		segmentId = id;
+		channel = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+	}
+
+	/**
+	 * Contenu d'un segment, lu par le canal plutôt que projeté : la relecture ne laisse aucune projection derrière elle.
+	 */
+	private ByteBuffer read(long id) throws IOException {
+		try (FileChannel segment = FileChannel.open(segmentPath(id), StandardOpenOption.READ)) {
+			ByteBuffer content = ByteBuffer.allocate((int) segment.size());
+			while (content.hasRemaining() && segment.read(content) >= 0) {
+				// Lecture jusqu'à la fin du fichier
+			}
+			return content.flip();
+		}
+	}
+
+	/**
+	 * Parcourt les enregistrements valides à partir de offset et renvoie la position qui suit le dernier.
+	 */
+	private static int scan(ByteBuffer segment, int offset, Consumer<ByteBuffer> handler) {
+		int position = offset;
+		CRC32 crc = new CRC32();
+		while (position + HEADER_SIZE <= segment.limit()) {
+			int length = segment.getInt(position);
+			if (length <= 0 || position + HEADER_SIZE + length > segment.limit()) {
+				break;
+			}
+			ByteBuffer record = segment.slice(position + HEADER_SIZE, length);
+			crc.reset();
+			crc.update(record.duplicate());
+			if ((int) crc.getValue() != segment.getInt(position + 4)) {
+				break;
+			}
+			handler.accept(record);
+			position += HEADER_SIZE + length;
+		}
+		return position;
+	}
+
+	private List<Long> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString())
+					.filter(name -> name.endsWith(SUFFIX))
+					.map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Path segmentPath(long id) {
+		return directory.resolve(String.format("%020d%s", id, SUFFIX));
+	}
+
+	// Java 17 n'a pas d'API publique pour libérer une projection : Unsafe.invokeCleaner est appelé par réflexion
+	// (module jdk.unsupported). À défaut, la projection reste libérée par le GC.
+	private static Consumer<MappedByteBuffer> createUnmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			return mapped -> {
+				try {
+					invokeCleaner.invoke(unsafe, mapped);
+				} catch (ReflectiveOperationException e) {
+					logger.warn("Unable to unmap an event log segment", e);
+				}
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.warn("Event log segments cannot be unmapped explicitly, deleting them may fail on Windows", e);
+			return mapped -> {
+			};
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Format binaire d'un ensemble d'utilisateurs (identité, historique des positions, récompenses).
+ * L'en-tête porte la position du journal à partir de laquelle rejouer les événements postérieurs ;
+ * un fichier de population pré-générée, sans journal associé, porte EventLog.Position.START.
+ */
+public final class UserSnapshotFile {
+	private static final int MAGIC = 0x54475331;
+
+	private UserSnapshotFile() {
+	}
+
+	/**
+	 * Écrit les utilisateurs dans un fichier temporaire puis le renomme atomiquement : un lecteur ne voit jamais
+	 * de fichier partiel.
+	 *
+	 * @return le nombre d'utilisateurs écrits
+	 */
+	public static int write(Path file, Iterable<User> users, EventLog.Position position) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		int count = 0;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeLong(position.segmentId());
+			out.writeInt(position.offset());
+			for (User user : users) {
+				out.writeBoolean(true);
+				writeUser(out, user);
+				count++;
+			}
+			out.writeBoolean(false);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return count;
+	}
+
+	/**
+	 * Relit les utilisateurs du fichier, dans l'ordre d'écriture.
+	 *
+	 * @return la position du journal enregistrée dans l'en-tête
+	 */
+	public static EventLog.Position read(Path file, RetentionPolicy retentionPolicy, Consumer<User> consumer)
+			throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a user snapshot: " + file);
+			}
+			EventLog.Position position = new EventLog.Position(in.readLong(), in.readInt());
+			while (in.readBoolean()) {
+				consumer.accept(readUser(in, retentionPolicy));
+			}
+			return position;
+		}
+	}
+
+	private static void writeUser(DataOutputStream out, User user) throws IOException {
+		out.writeLong(user.getUserId().getMostSignificantBits());
+		out.writeLong(user.getUserId().getLeastSignificantBits());
+		out.writeUTF(user.getUserName());
+		out.writeUTF(user.getPhoneNumber());
+		out.writeUTF(user.getEmailAddress());
+		List<VisitedLocation> history = new ArrayList<>(user.getVisitedLocationHistory());
+		out.writeInt(history.size());
+		for (VisitedLocation visitedLocation : history) {
+			writeVisitedLocation(out, visitedLocation);
+		}
+		// Copie : une récompense attribuée pendant l'écriture ne doit pas décaler le nombre annoncé
+		List<UserReward> rewards = new ArrayList<>(user.getUserRewards());
+		out.writeInt(rewards.size());
+		for (UserReward reward : rewards) {
+			writeVisitedLocation(out, reward.visitedLocation);
+			out.writeUTF(reward.attraction.attractionName);
+			out.writeUTF(reward.attraction.city);
+			out.writeUTF(reward.attraction.state);
+			out.writeDouble(reward.attraction.latitude);
+			out.writeDouble(reward.attraction.longitude);
+			out.writeInt(reward.getRewardPoints());
+		}
+	}
+
+	private static User readUser(DataInputStream in, RetentionPolicy retentionPolicy) throws IOException {
+		UUID userId = new UUID(in.readLong(), in.readLong());
+		User user = new User(userId, in.readUTF(), in.readUTF(), in.readUTF(), retentionPolicy);
+		int locations = in.readInt();
+		for (int i = 0; i < locations; i++) {
+			user.addToVisitedLocations(readVisitedLocation(in, userId));
+		}
+		int rewards = in.readInt();
+		for (int i = 0; i < rewards; i++) {
+			VisitedLocation visitedLocation = readVisitedLocation(in, userId);
+			Attraction attraction = new Attraction(in.readUTF(), in.readUTF(), in.readUTF(), in.readDouble(),
+					in.readDouble());
+			user.addUserReward(new UserReward(visitedLocation, attraction, in.readInt()));
+		}
+		return user;
+	}
+
+	private static void writeVisitedLocation(DataOutputStream out, VisitedLocation visitedLocation) throws IOException {
+		out.writeDouble(visitedLocation.location.latitude);
+		out.writeDouble(visitedLocation.location.longitude);
+		out.writeLong(visitedLocation.timeVisited.getTime());
+	}
+
+	private static VisitedLocation readVisitedLocation(DataInputStream in, UUID userId) throws IOException {
+		return new VisitedLocation(userId, new Location(in.readDouble(), in.readDouble()), new Date(in.readLong()));
+	}
+}
@@ -0,0 +1,278 @@
+package com.openclassrooms.tourguide.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Persistance des utilisateurs, de leurs positions et de leurs récompenses.
+ * Chaque changement est ajouté au journal (EventLog) ; le journal est mis sur disque par lots à intervalle court
+ * (group commit). Un snapshot compact de tous les utilisateurs est écrit périodiquement, après quoi les segments
+ * de journal qu'il couvre sont supprimés.
+ *
+ * Au démarrage, l'état est reconstruit à partir du dernier snapshot puis des événements du journal écrits depuis.
+ * Un événement peut figurer à la fois dans le snapshot et dans le journal : la relecture est idempotente
+ * (utilisateur connu, position pas plus récente que la dernière, récompense déjà attribuée).
+ */
+public class UserStateStore implements Closeable {
+	private static final byte USER = 1;
+	private static final byte LOCATION = 2;
+	private static final byte REWARD = 3;
+	private static final String SNAPSHOT_FILE = "users.snapshot";
+
+	private Logger logger = LoggerFactory.getLogger(UserStateStore.class);
+
+	private final EventLog log;
+	private final int segmentSize;
+	private final Path snapshotPath;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile Supplier<Iterable<User>> snapshotSource;
+	private final ThreadLocal<ByteBuffer> encodeBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+	public UserStateStore(TourGuideProperties.Persistence properties) throws IOException {
+		Path directory = Path.of(properties.getDirectory());
+		this.log = new EventLog(directory, properties.getSegmentSize());
+		this.segmentSize = properties.getSegmentSize();
+		this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "user-state-store");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long flushMillis = properties.getFlushInterval().toMillis();
+		scheduler.scheduleWithFixedDelay(log::force, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reconstruit les utilisateurs à partir du snapshot et du journal. Liste vide si rien n'a encore été persisté.
+	 */
+	public List<User> recover(RetentionPolicy retentionPolicy) throws IOException {
+		long start = System.nanoTime();
+		Map<UUID, User> users = new LinkedHashMap<>();
+		EventLog.Position from = readSnapshot(users, retentionPolicy);
+		log.replay(from, record -> apply(users, record, retentionPolicy));
+		// Les récompenses persistées couvrent tout l'historique relu
+		users.values().forEach(user -> user.advanceRewardWatermark(user.getVisitedLocationHistory().getAppendedCount()));
+		logger.info("Recovered " + users.size() + " users in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		return new ArrayList<>(users.values());
+	}
+
+	public void userAdded(User user) {
+		append(USER, record -> {
+			putUuid(record, user.getUserId());
+			putString(record, user.getUserName());
+			putString(record, user.getPhoneNumber());
+			putString(record, user.getEmailAddress());
+		});
+	}
+
+	public void locationVisited(VisitedLocation visitedLocation) {
+		append(LOCATION, record -> {
+			putUuid(record, visitedLocation.userId);
+			putVisitedLocation(record, visitedLocation);
+		});
+	}
+
+	public void rewardGranted(UUID userId, UserReward reward) {
+		append(REWARD, record -> {
+			putUuid(record, userId);
+			putVisitedLocation(record, reward.visitedLocation);
+			putString(record, reward.attraction.attractionName);
+			putString(record, reward.attraction.city);
+			putString(record, reward.attraction.state);
+			record.putDouble(reward.attraction.latitude);
+			record.putDouble(reward.attraction.longitude);
+			record.putInt(reward.getRewardPoints());
+		});
+	}
+
+	/**
+	 * Écrit un snapshot de tous les utilisateurs puis supprime les segments de journal devenus inutiles.
+	 * Le journal bascule sur un nouveau segment avant le parcours : les événements concurrents y sont conservés.
+	 */
+	public synchronized void snapshot(Iterable<User> users) throws IOException {
+		long start = System.nanoTime();
+		EventLog.Position position = log.roll();
+		int count = UserSnapshotFile.write(snapshotPath, users, position);
+		log.deleteSegmentsBefore(position.segmentId());
+		logger.debug("Snapshot of " + count + " users written in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+	}
+
+	/**
+	 * Planifie les snapshots périodiques ; les mêmes utilisateurs font l'objet d'un dernier snapshot à la fermeture.
+	 */
+	public void scheduleSnapshots(Duration interval, Supplier<Iterable<User>> users) {
+		this.snapshotSource = users;
+		long intervalMillis = interval.toMillis();
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				snapshot(users.get());
+			} catch (IOException | RuntimeException e) {
+				logger.error("Snapshot failed", e);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Met immédiatement sur disque les événements en attente.
+	 */
+	public void flush() {
+		if (!closed.get()) {
+			log.force();
+		}
+	}
+
+	/**
+	 * Arrête les tâches planifiées, écrit un dernier snapshot si des snapshots sont planifiés, puis ferme le journal :
+	 * après un arrêt propre, le redémarrage n'a presque rien à rejouer. Sans effet si le store est déjà fermé.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		scheduler.shutdown();
+		try {
+			// Un snapshot périodique en cours se termine avant le dernier
+			scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Supplier<Iterable<User>> users = snapshotSource;
+			if (users != null) {
+				snapshot(users.get());
+			}
+		} finally {
+			log.close();
+		}
+	}
+
+	/**
+	 * Encode un événement dans le tampon du thread puis l'ajoute au journal. Un tampon trop petit est remplacé par un
+	 * tampon deux fois plus grand, jusqu'à la taille d'un segment au-delà de laquelle le journal refuserait l'événement.
+	 */
+	private void append(byte type, Consumer<ByteBuffer> encoder) {
+		try {
+			ByteBuffer record = encodeBuffers.get();
+			while (true) {
+				record.clear();
+				record.put(type);
+				try {
+					encoder.accept(record);
+					break;
+				} catch (BufferOverflowException e) {
+					if (record.capacity() >= segmentSize) {
+						throw new IllegalArgumentException("Event exceeds the segment size", e);
+					}
+					record = ByteBuffer.allocate((int) Math.min(2L * record.capacity(), segmentSize));
+					encodeBuffers.set(record);
+				}
+			}
+			record.flip();
+			log.append(record);
+		} catch (RuntimeException e) {
+			// La persistance ne doit pas faire échouer le suivi : l'événement sera couvert par le prochain snapshot
+			logger.error("Could not append event to the log", e);
+		}
+	}
+
+	private void apply(Map<UUID, User> users, ByteBuffer record, RetentionPolicy retentionPolicy) {
+		byte type = record.get();
+		UUID userId = getUuid(record);
+		if (type == USER) {
+			users.computeIfAbsent(userId, id -> new User(id, getString(record), getString(record), getString(record),
+					retentionPolicy));
+			return;
+		}
+		User user = users.get(userId);
+		if (user == null) {
+			return;
+		}
+		VisitedLocation visitedLocation = getVisitedLocation(record, userId);
+		if (type == LOCATION) {
+			VisitedLocation last = user.getVisitedLocationHistory().getLast();
+			if (last == null || visitedLocation.timeVisited.after(last.timeVisited)) {
+				user.addToVisitedLocations(visitedLocation);
+			}
+		} else if (type == REWARD) {
+			Attraction attraction = new Attraction(getString(record), getString(record), getString(record),
+					record.getDouble(), record.getDouble());
+			user.addUserReward(new UserReward(visitedLocation, attraction, record.getInt()));
+		}
+	}
+
+	private EventLog.Position readSnapshot(Map<UUID, User> users, RetentionPolicy retentionPolicy) throws IOException {
+		if (!Files.exists(snapshotPath)) {
+			return EventLog.Position.START;
+		}
+		return UserSnapshotFile.read(snapshotPath, retentionPolicy, user -> users.put(user.getUserId(), user));
+	}
+
+	private static void putVisitedLocation(ByteBuffer record, VisitedLocation visitedLocation) {
+		record.putDouble(visitedLocation.location.latitude);
+		record.putDouble(visitedLocation.location.longitude);
+		record.putLong(visitedLocation.timeVisited.getTime());
+	}
+
+	private static VisitedLocation getVisitedLocation(ByteBuffer record, UUID userId) {
+		return new VisitedLocation(userId, new Location(record.getDouble(), record.getDouble()),
+				new Date(record.getLong()));
+	}
+
+	private static void putUuid(ByteBuffer record, UUID uuid) {
+		record.putLong(uuid.getMostSignificantBits());
+		record.putLong(uuid.getLeastSignificantBits());
+	}
+
+	private static UUID getUuid(ByteBuffer record) {
+		return new UUID(record.getLong(), record.getLong());
+	}
+
+	private static void putString(ByteBuffer record, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException("String of " + bytes.length + " bytes cannot be encoded");
+		}
+		record.putShort((short) bytes.length);
+		record.put(bytes);
+	}
+
+	private static String getString(ByteBuffer record) {
+		byte[] bytes = new byte[Short.toUnsignedInt(record.getShort())];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
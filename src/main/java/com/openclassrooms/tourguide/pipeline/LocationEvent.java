@@ -0,0 +1,56 @@
+package com.openclassrooms.tourguide.pipeline;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.openclassrooms.tourguide.user.User;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Position obtenue par le suivi d'un utilisateur et avancement de son traitement dans le pipeline :
+ * ingested se termine quand la position est enregistrée, completed quand ses récompenses sont attribuées.
+ */
+public class LocationEvent {
+	private final User user;
+	private final VisitedLocation visitedLocation;
+	private final CompletableFuture<VisitedLocation> ingested = new CompletableFuture<>();
+	private final CompletableFuture<VisitedLocation> completed = new CompletableFuture<>();
+	// Taille de l'historique après l'ajout de la position : borne des positions évaluées pour les récompenses
+	volatile long appendedCount;
+
+	LocationEvent(User user, VisitedLocation visitedLocation) {
+		this.user = user;
+		this.visitedLocation = visitedLocation;
+	}
+
+	/**
+	 * Position qui ne traverse pas le pipeline (dernière position connue renvoyée en repli).
+	 */
+	public static LocationEvent done(User user, VisitedLocation visitedLocation) {
+		LocationEvent event = new LocationEvent(user, visitedLocation);
+		event.ingested.complete(visitedLocation);
+		event.completed.complete(visitedLocation);
+		return event;
+	}
+
+	public User getUser() {
+		return user;
+	}
+
+	public VisitedLocation getVisitedLocation() {
+		return visitedLocation;
+	}
+
+	public CompletableFuture<VisitedLocation> ingested() {
+		return ingested;
+	}
+
+	public CompletableFuture<VisitedLocation> completed() {
+		return completed;
+	}
+
+	void fail(Throwable error) {
+		ingested.completeExceptionally(error);
+		completed.completeExceptionally(error);
+	}
+}
@@ -0,0 +1,252 @@
+package com.openclassrooms.tourguide.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.openclassrooms.tourguide.cache.TripDealsCache;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.persistence.UserStateStore;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPositionStore;
+import com.openclassrooms.tourguide.user.UserReward;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Traitement d'une position suivie, en quatre étapes :
+ * enregistrement (historique, positions, journal), détection des attractions proches et réservation des récompenses,
+ * points de chaque récompense via le cache de RewardCentral, attribution des récompenses.
+ * L'enregistrement, la proximité et l'attribution sont des PipelineStage séparées par des files bornées ; les points
+ * sont composés sur le futur du cache, sans thread dédié, dans la limite de tourguide.pipeline.points-in-flight.
+ *
+ * Chaque étape exerce une contre-pression sur la précédente. Entre l'enregistrement et la proximité, l'attente est
+ * bornée par tourguide.pipeline.handoff-timeout : au-delà, l'évaluation est reportée (le watermark de l'utilisateur
+ * n'avance pas et sa position suivante couvrira celle-ci) et completed échoue. Le débit du suivi (ingested) ne dépend
+ * de RewardCentral qu'une fois cette échéance atteinte.
+ */
+public class LocationPipeline {
+	private record RewardTask(LocationEvent event, Attraction attraction, CompletableFuture<UserReward> claim) {
+	}
+
+	private record Grant(RewardTask task, int rewardPoints) {
+	}
+
+	private final RewardsService rewardsService;
+	private final UserPositionStore positionStore;
+	// null si la persistance est désactivée
+	private final UserStateStore userStateStore;
+	private final TripDealsCache tripDealsCache;
+	private final PipelineStage<LocationEvent> ingest;
+	private final PipelineStage<LocationEvent> proximity;
+	private final PipelineStage<Grant> grant;
+	// Récompenses entre la demande de leurs points et leur attribution
+	private final Semaphore pointsInFlight;
+	private final int maxPointsInFlight;
+	private final Timer pointsTimer;
+	private final Counter deferred;
+	private final Duration handoffTimeout;
+	private final Duration shutdownTimeout;
+
+	public LocationPipeline(RewardsService rewardsService, UserPositionStore positionStore,
+			UserStateStore userStateStore, TripDealsCache tripDealsCache, TourGuideProperties.Pipeline properties,
+			ExecutionMode mode, MeterRegistry registry) {
+		this.rewardsService = rewardsService;
+		this.positionStore = positionStore;
+		this.userStateStore = userStateStore;
+		this.tripDealsCache = tripDealsCache;
+		this.ingest = new PipelineStage<>("ingest", mode, properties.getIngest(), this::ingest,
+				(event, error) -> event.fail(error), registry);
+		this.proximity = new PipelineStage<>("proximity", mode, properties.getProximity(), this::detectProximity,
+				(event, error) -> event.completed().completeExceptionally(error), registry);
+		this.grant = new PipelineStage<>("grant", mode, properties.getGrant(), this::grant,
+				(grant, error) -> release(grant.task(), error), registry);
+		this.maxPointsInFlight = properties.getPointsInFlight();
+		this.pointsInFlight = new Semaphore(maxPointsInFlight);
+		this.pointsTimer = Timer.builder(TourGuideMetrics.PIPELINE_STAGE)
+				.description("Items processed by each stage of the tracking pipeline")
+				.tag("stage", "points")
+				.register(registry);
+		Gauge.builder(TourGuideMetrics.PIPELINE_QUEUE_DEPTH, pointsInFlight,
+				permits -> maxPointsInFlight - permits.availablePermits())
+				.tag("stage", "points")
+				.register(registry);
+		this.handoffTimeout = properties.getHandoffTimeout();
+		this.shutdownTimeout = properties.getShutdownTimeout();
+		this.deferred = Counter.builder(TourGuideMetrics.PIPELINE_DEFERRED)
+				.description("Locations whose reward evaluation was deferred because the proximity queue stayed full")
+				.register(registry);
+	}
+
+	/**
+	 * Soumet une position fraîche, en attendant au besoin une place dans la file d'enregistrement.
+	 */
+	public LocationEvent submit(User user, VisitedLocation visitedLocation) {
+		LocationEvent event = new LocationEvent(user, visitedLocation);
+		try {
+			ingest.put(event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			event.fail(e);
+		} catch (RejectedExecutionException e) {
+			event.fail(e);
+		}
+		return event;
+	}
+
+	/**
+	 * Arrêt propre : les étapes s'arrêtent dans l'ordre du flux, chacune après avoir traité sa file, pendant que
+	 * les suivantes acceptent encore son travail. Les positions déjà soumises sont enregistrées et leurs récompenses
+	 * attribuées (dans la limite de tourguide.pipeline.shutdown-timeout par étape) ; les soumissions ultérieures
+	 * échouent, comme les positions abandonnées au-delà du délai.
+	 */
+	public void close() {
+		ingest.close(shutdownTimeout);
+		proximity.close(shutdownTimeout);
+		awaitPoints();
+		grant.close(shutdownTimeout);
+	}
+
+	private void ingest(LocationEvent event) {
+		User user = event.getUser();
+		VisitedLocation visitedLocation = event.getVisitedLocation();
+		try {
+			user.addToVisitedLocations(visitedLocation);
+			positionStore.update(visitedLocation);
+			if (userStateStore != null) {
+				userStateStore.locationVisited(visitedLocation);
+			}
+			event.appendedCount = user.getVisitedLocationHistory().getAppendedCount();
+		} catch (RuntimeException e) {
+			event.fail(e);
+			throw e;
+		}
+		event.ingested().complete(visitedLocation);
+		try {
+			if (!proximity.offer(event, handoffTimeout)) {
+				deferred.increment();
+				event.completed().completeExceptionally(new RejectedExecutionException(
+						"Proximity stage saturated for " + handoffTimeout + ", reward evaluation deferred"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			event.completed().completeExceptionally(e);
+		} catch (RejectedExecutionException e) {
+			event.completed().completeExceptionally(e);
+		}
+	}
+
+	private void detectProximity(LocationEvent event) {
+		User user = event.getUser();
+		List<CompletableFuture<UserReward>> claims = new ArrayList<>();
+		List<CompletableFuture<UserReward>> owned = new ArrayList<>();
+		try {
+			for (Attraction attraction : rewardsService.findAttractionsNear(user, user.getRewardWatermark(),
+					event.appendedCount)) {
+				CompletableFuture<UserReward> claim = new CompletableFuture<>();
+				// Réservation déjà posée par un autre calcul : on attend simplement son issue
+				CompletableFuture<UserReward> existing = user.reserveReward(attraction.attractionName, claim);
+				if (existing != null) {
+					claims.add(existing);
+					continue;
+				}
+				claims.add(claim);
+				owned.add(claim);
+				try {
+					pointsInFlight.acquire();
+				} catch (InterruptedException e) {
+					user.releaseReward(attraction.attractionName, claim, e);
+					Thread.currentThread().interrupt();
+					break;
+				}
+				fetchPoints(new RewardTask(event, attraction, claim));
+			}
+		} catch (RuntimeException e) {
+			event.completed().completeExceptionally(e);
+			throw e;
+		}
+		CompletableFuture.allOf(claims.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+			// Le watermark n'avance que si toutes les récompenses sont attribuées : sinon la position sera réévaluée
+			if (error == null) {
+				user.advanceRewardWatermark(event.appendedCount);
+			}
+			// Nouvelle récompense : le total de points change, on recalcule en arrière-plan les offres déjà consultées
+			if (owned.stream().anyMatch(claim -> !claim.isCompletedExceptionally()) && !user.getTripDeals().isEmpty()) {
+				tripDealsCache.refresh(user);
+			}
+			event.completed().complete(event.getVisitedLocation());
+		});
+	}
+
+	/**
+	 * Demande les points au cache et transmet la récompense à l'attribution quand ils arrivent. Le permis pris par
+	 * la proximité n'est rendu qu'après l'attribution : la file d'attribution ne contient jamais plus de
+	 * points-in-flight éléments, et le put ci-dessous n'attend pas tant qu'elle est au moins aussi grande.
+	 */
+	private void fetchPoints(RewardTask task) {
+		User user = task.event().getUser();
+		long start = System.nanoTime();
+		CompletableFuture<Integer> rewardPoints;
+		try {
+			rewardPoints = rewardsService.getRewardPointsAsync(task.attraction(), user.getUserId());
+		} catch (RuntimeException e) {
+			release(task, e);
+			return;
+		}
+		rewardPoints.whenComplete((points, error) -> {
+			pointsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (error != null) {
+				release(task, error);
+				return;
+			}
+			try {
+				grant.put(new Grant(task, points));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				release(task, e);
+			} catch (RejectedExecutionException e) {
+				release(task, e);
+			}
+		});
+	}
+
+	private void grant(Grant grant) {
+		RewardTask task = grant.task();
+		User user = task.event().getUser();
+		try {
+			rewardsService.grantReward(user, task.claim(),
+					new UserReward(user.getLastVisitedLocation(), task.attraction(), grant.rewardPoints()));
+		} finally {
+			pointsInFlight.release();
+		}
+	}
+
+	// Libère la réservation (un prochain calcul réessaiera) et le permis de la récompense
+	private void release(RewardTask task, Throwable error) {
+		task.event().getUser().releaseReward(task.attraction().attractionName, task.claim(), error);
+		pointsInFlight.release();
+	}
+
+	// À l'arrêt, les points déjà demandés arrivent avant la fermeture de l'attribution
+	private void awaitPoints() {
+		try {
+			if (pointsInFlight.tryAcquire(maxPointsInFlight, shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+				pointsInFlight.release(maxPointsInFlight);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.openclassrooms.tourguide.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Étape du pipeline de suivi : une file bornée propre à l'étape, vidée par un nombre fixe de boucles de traitement.
+ * Les boucles tournent sur un executor de TaskExecutors : threads de plateforme ou threads virtuels selon
+ * tourguide.execution.mode.
+ *
+ * Publie, avec le tag stage, la durée et le nombre de traitements (tourguide.pipeline.stage) et la profondeur
+ * de la file (tourguide.pipeline.queue.depth).
+ */
+public class PipelineStage<T> {
+	// Intervalle auquel une boucle inactive vérifie si l'étape est fermée
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	private Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+
+	private final String name;
+	private final Consumer<T> handler;
+	private final BiConsumer<T, Throwable> onDropped;
+	private final BlockingQueue<T> queue;
+	private final ExecutorService executor;
+	private final Timer timer;
+	private volatile boolean closed;
+
+	/**
+	 * @param onDropped appelé pour chaque élément accepté qui ne sera pas traité (arrêt de l'étape au-delà du délai),
+	 *                  pour que son émetteur n'attende pas indéfiniment
+	 */
+	public PipelineStage(String name, ExecutionMode mode, TourGuideProperties.Pipeline.Stage properties,
+			Consumer<T> handler, BiConsumer<T, Throwable> onDropped, MeterRegistry registry) {
+		this.name = name;
+		this.handler = handler;
+		this.onDropped = onDropped;
+		this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+		this.executor = TaskExecutors.create("pipeline-" + name, mode, properties.getConcurrency(), registry);
+		this.timer = Timer.builder(TourGuideMetrics.PIPELINE_STAGE)
+				.description("Items processed by each stage of the tracking pipeline")
+				.tag("stage", name)
+				.register(registry);
+		Gauge.builder(TourGuideMetrics.PIPELINE_QUEUE_DEPTH, queue, BlockingQueue::size)
+				.tag("stage", name)
+				.register(registry);
+		for (int i = 0; i < properties.getConcurrency(); i++) {
+			executor.execute(this::work);
+		}
+	}
+
+	/**
+	 * Soumet l'élément, en attendant qu'une place se libère dans la file (contre-pression sur l'étape précédente).
+	 *
+	 * @throws RejectedExecutionException si l'étape est arrêtée, y compris pendant l'attente
+	 */
+	public void put(T item) throws InterruptedException {
+		ensureOpen();
+		queue.put(item);
+		checkAccepted(item);
+	}
+
+	/**
+	 * Soumet l'élément, en attendant au plus timeout qu'une place se libère dans la file.
+	 *
+	 * @return false si la file est restée pleine jusqu'à l'échéance
+	 * @throws RejectedExecutionException si l'étape est arrêtée, y compris pendant l'attente
+	 */
+	public boolean offer(T item, Duration timeout) throws InterruptedException {
+		ensureOpen();
+		if (!queue.offer(item, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+			return false;
+		}
+		checkAccepted(item);
+		return true;
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Cesse d'accepter des éléments et attend le traitement de ceux déjà en file ; au-delà de timeout,
+	 * les traitements en cours sont interrompus et les éléments restants abandonnés (signalés à onDropped).
+	 */
+	public void close(Duration timeout) {
+		closed = true;
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+				// La file est vidée avant l'interruption : une boucle interrompue ne reprend aucun élément
+				int dropped = drop();
+				executor.shutdownNow();
+				logger.warn("Pipeline stage " + name + " did not drain within " + timeout + ", " + dropped
+						+ " items dropped");
+			}
+		} catch (InterruptedException e) {
+			drop();
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void work() {
+		while (true) {
+			T item;
+			try {
+				item = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Arrêt forcé : les éléments restants sont abandonnés par close
+				return;
+			}
+			if (item != null) {
+				process(item);
+			} else if (closed) {
+				return;
+			}
+		}
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new RejectedExecutionException("Pipeline stage " + name + " is shut down");
+		}
+	}
+
+	// Une soumission concurrente de la fermeture peut arriver après l'arrêt des boucles : elle est alors retirée
+	private void checkAccepted(T item) {
+		if (closed && queue.remove(item)) {
+			throw new RejectedExecutionException("Pipeline stage " + name + " is shut down");
+		}
+	}
+
+	private int drop() {
+		List<T> dropped = new ArrayList<>();
+		queue.drainTo(dropped);
+		RejectedExecutionException error = new RejectedExecutionException(
+				"Pipeline stage " + name + " was shut down before processing the item");
+		for (T item : dropped) {
+			try {
+				onDropped.accept(item, error);
+			} catch (RuntimeException e) {
+				logger.error("Pipeline stage " + name + " failed to release a dropped item", e);
+			}
+		}
+		return dropped.size();
+	}
+
+	private void process(T item) {
+		long start = System.nanoTime();
+		try {
+			handler.accept(item);
+		} catch (RuntimeException e) {
+			logger.error("Pipeline stage " + name + " failed", e);
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+}
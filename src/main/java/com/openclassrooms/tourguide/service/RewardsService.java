@@ -1,23 +1,31 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.attraction.AttractionCatalog;
+import com.openclassrooms.tourguide.attraction.AttractionIndex;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot.GeoPoint;
+import com.openclassrooms.tourguide.attraction.BoundingBox;
+import com.openclassrooms.tourguide.cache.RewardPointsCache;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.persistence.UserStateStore;
 import com.openclassrooms.tourguide.user.User;
 import com.openclassrooms.tourguide.user.UserReward;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
-import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rewardCentral.RewardCentral;
-import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
-@Service
 public class RewardsService {
 	private static final double STATUTE_MILES_PER_NAUTICAL_MILE = 1.15077945;
 
@@ -26,17 +34,49 @@ public class RewardsService {
 	private int proximityBuffer = defaultProximityBuffer;
 	private final int attractionProximityRange = 200;
 
-	private final GpsUtil gpsUtil;
 	private final RewardCentral rewardsCentral;
+	private final AttractionCatalog attractionCatalog;
+	private final RewardPointsCache rewardPointsCache;
 
-	// Utilisation d'un pool de threads fixe avec un nombre limité de threads (500 ici)
-	private final ExecutorService executor = Executors.newFixedThreadPool(380);
+	// Pool fixe ou threads virtuels bornés, selon tourguide.execution.mode
+	private final ExecutorService executor;
+	// Journal des récompenses attribuées, branché par TourGuideService quand la persistance est active
+	private volatile UserStateStore userStateStore;
 
 	private Logger logger = LoggerFactory.getLogger(RewardsService.class);
 
 	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral) {
-		this.gpsUtil = gpsUtil;
+		this(gpsUtil, rewardCentral, new TourGuideProperties());
+	}
+
+	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral, TourGuideProperties properties) {
+		this(gpsUtil, rewardCentral, properties, Metrics.globalRegistry);
+	}
+
+	public RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral, TourGuideProperties properties,
+			MeterRegistry registry) {
+		this(gpsUtil, rewardCentral, properties, registry, TaskExecutors.create("rewards",
+				properties.getExecution().getMode(), properties.getExecution().getRewardsConcurrency(), registry));
+	}
+
+	// Le même executor porte les calculs de récompenses et les appels à RewardCentral du cache des points,
+	// comme dans la configuration Spring (TourGuideModule)
+	private RewardsService(GpsUtil gpsUtil, RewardCentral rewardCentral, TourGuideProperties properties,
+			MeterRegistry registry, ExecutorService executor) {
+		this(rewardCentral,
+				new AttractionCatalog(gpsUtil, properties.getAttractions().getRefreshInterval(),
+						properties.getAttractions().getCellSizeDegrees(), registry),
+				new RewardPointsCache(rewardCentral, properties.getRewardPointsCache().getMaximumSize(),
+						properties.getRewardPointsCache().getTtl(), executor, registry),
+				executor);
+	}
+
+	public RewardsService(RewardCentral rewardCentral, AttractionCatalog attractionCatalog,
+			RewardPointsCache rewardPointsCache, ExecutorService executor) {
 		this.rewardsCentral = rewardCentral;
+		this.attractionCatalog = attractionCatalog;
+		this.rewardPointsCache = rewardPointsCache;
+		this.executor = executor;
 	}
 
 	public void setProximityBuffer(int proximityBuffer) {
@@ -47,61 +87,125 @@ public class RewardsService {
 		proximityBuffer = defaultProximityBuffer;
 	}
 
+	public void setUserStateStore(UserStateStore userStateStore) {
+		this.userStateStore = userStateStore;
+	}
+
 	/**
-	 * Calcule les récompenses pour un utilisateur donné.
-	 * On itère sur la liste des attractions et, si une visite est proche (selon isNearAttraction),
-	 * on ajoute la récompense correspondante à l'utilisateur.
+	 * Attribue une récompense réservée puis la persiste : point d'attribution commun au calcul direct et au pipeline
+	 * de suivi. La mémoire passe avant le journal, pour qu'un snapshot qui supprime le segment de l'événement
+	 * contienne déjà la récompense. La réservation n'est terminée qu'après l'ajout au journal : une fois le calcul
+	 * terminé, un flush du store suffit à rendre la récompense durable.
+	 */
+	public void grantReward(User user, CompletableFuture<UserReward> claim, UserReward userReward) {
+		UserStateStore store = userStateStore;
+		user.grantReward(claim, userReward, () -> {
+			if (store != null) {
+				store.rewardGranted(user.getUserId(), userReward);
+			}
+		});
+	}
+
+	/**
+	 * Calcule les récompenses pour un utilisateur donné, en n'évaluant que les positions ajoutées
+	 * depuis le dernier calcul (watermark de l'utilisateur).
 	 */
 	public CompletableFuture<Void> calculateRewardsAsync(User user) {
-		return CompletableFuture.runAsync(() -> {
-			List<Attraction> attractions = gpsUtil.getAttractions();
-			for (Attraction attraction : attractions) {
-				if (user.getVisitedLocations().stream().anyMatch(v -> isNearAttraction(v, attraction))) {
-					int rewardPoints = rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
-					user.addUserReward(new UserReward(user.getLastVisitedLocation(), attraction, rewardPoints));
+		return calculateRewardsAsync(user, false);
+	}
+
+	/**
+	 * Calcule les récompenses pour un utilisateur donné.
+	 * Pour chaque visite évaluée, l'index spatial du catalogue fournit les seules attractions candidates ; celles qui sont
+	 * réellement proches donnent lieu à une récompense, dans l'ordre de la liste des attractions.
+	 *
+	 * @param fullRescan true pour réévaluer tout l'historique (backfill, changement du rayon de proximité)
+	 */
+	public CompletableFuture<Void> calculateRewardsAsync(User user, boolean fullRescan) {
+		return CompletableFuture.supplyAsync(() -> {
+			long end = user.getVisitedLocationHistory().getAppendedCount();
+			long start = fullRescan ? 0 : user.getRewardWatermark();
+			// La réservation précède l'appel à RewardCentral ; on attend aussi les réservations tenues par un calcul concurrent.
+			// Rien ne bloque un thread de l'executor : les points arrivent du cache, calculés sur ce même executor.
+			List<CompletableFuture<UserReward>> claims = new ArrayList<>();
+			for (Attraction attraction : findAttractionsNear(user, start, end)) {
+				CompletableFuture<UserReward> claim = new CompletableFuture<>();
+				CompletableFuture<UserReward> existing = user.reserveReward(attraction.attractionName, claim);
+				if (existing != null) {
+					claims.add(existing);
+					continue;
 				}
+				claims.add(claim);
+				getRewardPointsAsync(attraction, user.getUserId()).whenComplete((rewardPoints, error) -> {
+					if (error != null) {
+						logger.warn("Could not get reward points of " + attraction.attractionName + " for user "
+								+ user.getUserId() + ", the visit will be evaluated again", error);
+						user.releaseReward(attraction.attractionName, claim, error);
+						return;
+					}
+					grantReward(user, claim, new UserReward(user.getLastVisitedLocation(), attraction, rewardPoints));
+				});
 			}
-		}, executor);
+			// Le watermark n'avance qu'une fois les récompenses ajoutées : un appel concurrent réévalue au besoin
+			return CompletableFuture.allOf(claims.toArray(new CompletableFuture[0]))
+					.thenRun(() -> user.advanceRewardWatermark(end));
+		}, executor).thenCompose(done -> done);
 	}
 
-	private boolean isNearAttraction(VisitedLocation v, Attraction attraction) {
-		return getDistance(attraction, v.location) <= proximityBuffer;
+	/**
+	 * Attractions proches d'au moins une des positions de l'historique comprises entre les séquences start (incluse)
+	 * et end (exclue), dans l'ordre de la liste des attractions. Seules les attractions candidates de l'index spatial
+	 * sont évaluées. Les positions déjà évincées de l'historique ne peuvent plus l'être : leur nombre est journalisé.
+	 */
+	public List<Attraction> findAttractionsNear(User user, long start, long end) {
+		AttractionSnapshot snapshot = attractionCatalog.getSnapshot();
+		AttractionIndex index = snapshot.getIndex();
+		boolean[] near = new boolean[snapshot.size()];
+		long evicted = user.getVisitedLocationHistory().forEachBetween(start, end, visitedLocation -> {
+			GeoPoint point = GeoPoint.of(visitedLocation.location);
+			BoundingBox box = BoundingBox.around(visitedLocation.location, proximityBuffer);
+			index.forEachCandidate(box, i -> {
+				if (!near[i] && snapshot.isWithin(i, point, box, proximityBuffer)) {
+					near[i] = true;
+				}
+			});
+		});
+		// Au-dessus du watermark, une position évincée n'a jamais été évaluée (plus de positions ajoutées que la capacité
+		// de l'historique entre deux évaluations, ou positions expirées) ; en dessous, c'est une réévaluation complète
+		if (evicted > 0 && start >= user.getRewardWatermark()) {
+			logger.warn(evicted + " locations of user " + user.getUserId()
+					+ " were evicted from the history before their rewards were evaluated");
+		}
+		List<Attraction> attractions = new ArrayList<>();
+		for (int i = 0; i < near.length; i++) {
+			if (near[i]) {
+				attractions.add(snapshot.get(i));
+			}
+		}
+		return attractions;
 	}
 
-	private List<Attraction> findNearbyAttractions(VisitedLocation visitedLocation, List<Attraction> attractions) {
-		return attractions.parallelStream()
-				.filter(attraction -> nearAttraction(visitedLocation, attraction))
-				.collect(Collectors.toList());
+	public AttractionCatalog getAttractionCatalog() {
+		return attractionCatalog;
 	}
 
-	private CompletableFuture<Void> processRewards(User user, VisitedLocation visitedLocation, List<Attraction> attractions) {
-		List<CompletableFuture<Void>> futures = attractions.stream()
-				.map(attraction -> CompletableFuture.supplyAsync(() -> getReward(user, visitedLocation, attraction), executor)
-						.thenAcceptAsync(reward -> {
-							if (reward != null) {
-								user.addUserReward(reward);
-							}
-						}, executor))
-				.collect(Collectors.toList());
-		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+	public int getRewardPoints(Attraction attraction, User user) {
+		return getRewardPoints(attraction, user.getUserId());
 	}
 
-	private UserReward getReward(User user, VisitedLocation visitedLocation, Attraction attraction) {
-		boolean alreadyRewarded = user.getUserRewards().stream()
-				.anyMatch(r -> r.attraction.attractionName.equals(attraction.attractionName));
-		if (!alreadyRewarded) {
-			int rewardPoints = getRewardPoints(attraction, user);
-			return new UserReward(visitedLocation, attraction, rewardPoints);
-		}
-		return null;
+	/**
+	 * Points de récompense via le cache : RewardCentral n'est appelé qu'en cas d'absence dans le cache.
+	 */
+	public int getRewardPoints(Attraction attraction, UUID userId) {
+		return rewardPointsCache.getRewardPoints(attraction.attractionId, userId);
 	}
 
-	private boolean nearAttraction(VisitedLocation visitedLocation, Attraction attraction) {
-		return getDistance(attraction, visitedLocation.location) <= proximityBuffer;
+	public CompletableFuture<Integer> getRewardPointsAsync(Attraction attraction, UUID userId) {
+		return rewardPointsCache.getRewardPointsAsync(attraction.attractionId, userId);
 	}
 
-	public int getRewardPoints(Attraction attraction, User user) {
-		return rewardsCentral.getAttractionRewardPoints(attraction.attractionId, user.getUserId());
+	public RewardPointsCache getRewardPointsCache() {
+		return rewardPointsCache;
 	}
 
 	public RewardCentral getRewardsCentral() {
@@ -109,7 +213,22 @@ public class RewardsService {
 	}
 
 	public boolean isWithinAttractionProximity(Attraction attraction, Location location) {
-		return (getDistance(attraction, location) <= attractionProximityRange);
+		return BoundingBox.latitudeBandContains(attraction.latitude, location.latitude, attractionProximityRange)
+				&& getDistance(attraction, location) <= attractionProximityRange;
+	}
+
+	/**
+	 * Distance, en miles, entre la position et la zone de récompense (rayon de proximité) de l'attraction la plus
+	 * proche ; 0 si une attraction est déjà à portée. Seules les attractions candidates de l'index dans un rayon
+	 * de horizonMiles autour de cette zone sont évaluées : horizonMiles est renvoyé si aucune n'est plus proche.
+	 */
+	public double getDistanceToRewardZone(Location location, double horizonMiles) {
+		AttractionSnapshot snapshot = attractionCatalog.getSnapshot();
+		GeoPoint point = GeoPoint.of(location);
+		double[] nearest = { horizonMiles + proximityBuffer };
+		snapshot.getIndex().forEachCandidate(location, nearest[0],
+				i -> nearest[0] = Math.min(nearest[0], snapshot.getDistance(i, point)));
+		return Math.max(0, nearest[0] - proximityBuffer);
 	}
 
 	public double getDistance(Location loc1, Location loc2) {
@@ -1,61 +1,177 @@
 package com.openclassrooms.tourguide.service;
 
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot.GeoPoint;
+import com.openclassrooms.tourguide.cache.TripDealsCache;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
 import com.openclassrooms.tourguide.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.dto.UserLocationDTO;
+import com.openclassrooms.tourguide.gps.GpsBulkheadFullException;
+import com.openclassrooms.tourguide.gps.GpsLocationClient;
+import com.openclassrooms.tourguide.gps.StaleVisitedLocation;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.pipeline.LocationEvent;
+import com.openclassrooms.tourguide.pipeline.LocationPipeline;
+import com.openclassrooms.tourguide.persistence.EventLog;
+import com.openclassrooms.tourguide.persistence.UserSnapshotFile;
+import com.openclassrooms.tourguide.persistence.UserStateStore;
+import com.openclassrooms.tourguide.tracker.AdaptiveTrackingPolicy;
 import com.openclassrooms.tourguide.tracker.Tracker;
 import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPositionStore;
+import com.openclassrooms.tourguide.user.UserRegistry;
 import com.openclassrooms.tourguide.user.UserReward;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import tripPricer.Provider;
 import tripPricer.TripPricer;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.IntStream;
-import java.util.Comparator;
 
 @Service
 public class TourGuideService {
+	public static final int DEFAULT_NEARBY_ATTRACTIONS = 5;
+
 	private Logger logger = LoggerFactory.getLogger(TourGuideService.class);
 	private final GpsUtil gpsUtil;
 	private final RewardsService rewardsService;
-	private final TripPricer tripPricer = new TripPricer();
+	private final TripPricer tripPricer;
 	public final Tracker tracker;
 	boolean testMode = true;
 
-	// Utilisation d'un pool de threads fixe avec un nombre limité de threads (500 ici)
-	private final ExecutorService executor = Executors.newFixedThreadPool(1000);
+	// Appels à TripPricer du cache des offres : pool fixe ou threads virtuels bornés, selon tourguide.execution.mode
+	private final ExecutorService tripDealsExecutor;
+	// Rétention de l'historique des positions appliquée aux utilisateurs créés par le service
+	private final RetentionPolicy retentionPolicy;
+	private final GpsLocationClient gpsLocationClient;
+	private final Counter gpsFallbacks;
+	// Suivi en cours par utilisateur : les demandes concurrentes se greffent sur le même futur
+	private final Map<UUID, CompletableFuture<LocationEvent>> trackingInFlight = new ConcurrentHashMap<>();
+	private final long reuseMaxAgeMillis;
+	private final Counter trackingCoalesced;
+	private final Counter trackingReused;
+	private final TourGuideProperties.BatchLocation batchLocation;
+	// Dernière position de chaque utilisateur, en colonnes primitives (parcours et exports sans allocation)
+	private final UserPositionStore positionStore = new UserPositionStore();
+	private final TripDealsCache tripDealsCache;
+	private final TourGuideProperties.NearbyAttractions nearbyAttractions;
+	// Utilisateurs par nom et par userId ; parcourus sans copie par le Tracker, les snapshots et les exports
+	private final UserRegistry userRegistry;
+	// Persistance des utilisateurs ; null si tourguide.persistence.enabled=false
+	private final UserStateStore userStateStore;
+	// Enregistrement des positions suivies puis attribution des récompenses, en étapes séparées par des files bornées
+	private final LocationPipeline locationPipeline;
+	private final TourGuideProperties.Bootstrap bootstrap;
+	private final long bootstrapSeed;
+	// Terminé quand la population initiale est chargée (readiness)
+	private final CompletableFuture<Void> usersLoaded = new CompletableFuture<>();
 
 	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService) {
+		this(gpsUtil, rewardsService, new TourGuideProperties());
+	}
+
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideProperties properties) {
+		this(gpsUtil, rewardsService, properties, Metrics.globalRegistry);
+	}
+
+	@Autowired
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TourGuideProperties properties,
+			MeterRegistry registry) {
+		this(gpsUtil, rewardsService, new TripPricer(), properties, registry);
+	}
+
+	public TourGuideService(GpsUtil gpsUtil, RewardsService rewardsService, TripPricer tripPricer,
+			TourGuideProperties properties, MeterRegistry registry) {
 		this.gpsUtil = gpsUtil;
+		this.tripPricer = tripPricer;
 		this.rewardsService = rewardsService;
+		this.tripDealsExecutor = TaskExecutors.create("tripDeals", properties.getExecution().getMode(),
+				properties.getTripDeals().getConcurrency(), registry);
+		this.gpsLocationClient = new GpsLocationClient(gpsUtil, properties.getGps(),
+				properties.getExecution().getMode(), registry);
+		this.gpsFallbacks = registry.counter(TourGuideMetrics.GPS_FALLBACKS);
+		Duration reuseMaxAge = properties.getTracking().getReuseMaxAge();
+		this.reuseMaxAgeMillis = reuseMaxAge == null ? 0 : reuseMaxAge.toMillis();
+		this.trackingCoalesced = registry.counter(TourGuideMetrics.TRACKING_COALESCED);
+		this.trackingReused = registry.counter(TourGuideMetrics.TRACKING_REUSED);
+		this.tripDealsCache = new TripDealsCache(tripPricer, tripPricerApiKey, properties.getTripDeals().getMaximumSize(),
+				properties.getTripDeals().getTtl(), tripDealsExecutor, registry);
+		this.batchLocation = properties.getBatchLocation();
+		this.nearbyAttractions = properties.getNearbyAttractions();
+		this.retentionPolicy = new RetentionPolicy(properties.getHistory().getCapacity(),
+				properties.getHistory().getMaxAge());
 		Locale.setDefault(Locale.US);
+		this.userRegistry = new UserRegistry(properties.getUsers().getShards());
+		Gauge.builder(TourGuideMetrics.USERS, userRegistry, UserRegistry::size).register(registry);
+		Gauge.builder(TourGuideMetrics.USERS_SHARD_MAX, userRegistry, users -> users.getStats().maxShardSize())
+				.register(registry);
+		this.userStateStore = openUserStateStore(properties.getPersistence());
+		if (userStateStore != null) {
+			rewardsService.setUserStateStore(userStateStore);
+		}
+		this.locationPipeline = new LocationPipeline(rewardsService, positionStore, userStateStore, tripDealsCache,
+				properties.getPipeline(), properties.getExecution().getMode(), registry);
+		this.bootstrap = properties.getBootstrap();
+		this.bootstrapSeed = bootstrap.getSeed() != null ? bootstrap.getSeed() : System.nanoTime();
 
 		if (testMode) {
 			logger.info("TestMode enabled");
-			logger.debug("Initializing users");
-			initializeInternalUsers();
-			logger.debug("Finished initializing users");
 		}
-		tracker = new Tracker(this);
+		switch (bootstrap.getMode()) {
+		case SYNC -> loadUsers();
+		case ASYNC -> {
+			// Hors du chemin du constructeur : le contexte Spring démarre pendant le chargement
+			Thread loader = new Thread(this::loadUsers, "user-bootstrap");
+			loader.setDaemon(true);
+			loader.start();
+		}
+		case LAZY -> {
+			restoreUsers();
+			usersLoaded.complete(null);
+		}
+		}
+		if (userStateStore != null) {
+			userStateStore.scheduleSnapshots(properties.getPersistence().getSnapshotInterval(),
+					() -> userRegistry);
+		}
+		AdaptiveTrackingPolicy adaptivePolicy = properties.getTracker().getAdaptive().isEnabled()
+				? new AdaptiveTrackingPolicy(rewardsService, properties.getTracker())
+				: null;
+		tracker = new Tracker(this, properties.getTracker(), adaptivePolicy, registry);
 		addShutDownHook();
 	}
 
@@ -64,80 +180,439 @@ public class TourGuideService {
 	}
 
 	public VisitedLocation getUserLocation(User user) {
-		Object visitedLocation = (user.getVisitedLocations().size() > 0) ? user.getLastVisitedLocation()
-				: trackUserLocation(user);
-		return (VisitedLocation) visitedLocation;
+		return getUserLocationAsync(user).join();
+	}
+
+	/**
+	 * Dernière position connue de l'utilisateur, ou position demandée à GpsUtil s'il n'en a pas encore.
+	 */
+	public CompletableFuture<VisitedLocation> getUserLocationAsync(User user) {
+		VisitedLocation last = lastLocation(user);
+		return last != null ? CompletableFuture.completedFuture(last) : trackUserLocation(user);
 	}
 
 	public User getUser(String userName) {
-		return internalUserMap.get(userName);
+		User user = userRegistry.getByName(userName);
+		if (user == null && bootstrap.getMode() == TourGuideProperties.Bootstrap.Mode.LAZY) {
+			user = createInternalUserOnDemand(userName);
+		}
+		return user;
+	}
+
+	public User getUserById(UUID userId) {
+		return userRegistry.getById(userId);
+	}
+
+	/**
+	 * Positions courantes d'un lot d'utilisateurs, désignés par nom ou par userId.
+	 * Les positions assez récentes sont renvoyées telles quelles ; les autres sont demandées à GpsUtil en parallèle,
+	 * dans la limite de l'échéance du lot, sans attendre le calcul des récompenses. L'ordre de la réponse suit celui
+	 * de la demande.
+	 */
+	public List<UserLocationDTO> getUserLocations(List<String> users) {
+		return getUserLocationsAsync(users).join();
+	}
+
+	/**
+	 * Variante non bloquante de getUserLocations : le futur se termine au plus tard à l'échéance du lot.
+	 */
+	public CompletableFuture<List<UserLocationDTO>> getUserLocationsAsync(List<String> users) {
+		if (users.size() > batchLocation.getMaxBatchSize()) {
+			throw new IllegalArgumentException("Batch of " + users.size() + " users exceeds the maximum of "
+					+ batchLocation.getMaxBatchSize());
+		}
+		long deadline = System.nanoTime() + batchLocation.getDeadline().toNanos();
+		long freshAfter = System.currentTimeMillis() - batchLocation.getMaxAge().toMillis();
+
+		UserLocationDTO[] results = new UserLocationDTO[users.size()];
+		User[] pendingUsers = new User[users.size()];
+		List<CompletableFuture<VisitedLocation>> futures = new ArrayList<>(users.size());
+		for (int i = 0; i < results.length; i++) {
+			String key = users.get(i);
+			User user = findUser(key);
+			if (user == null) {
+				results[i] = new UserLocationDTO(key, null, UserLocationDTO.Status.NOT_FOUND, null, null);
+				continue;
+			}
+			VisitedLocation last = positionStore.getTimeMillis(user.getUserId()) >= freshAfter ? lastLocation(user) : null;
+			if (last != null && last.timeVisited.getTime() >= freshAfter) {
+				results[i] = toUserLocation(key, user, UserLocationDTO.Status.CACHED, last);
+			} else {
+				pendingUsers[i] = user;
+				// L'échéance du lot ne couvre que la localisation : les récompenses suivent dans le pipeline
+				futures.add(ingestUserLocation(user));
+			}
+		}
+
+		// Résultats partiels à l'échéance : le statut de chaque utilisateur est déterminé à ce moment-là
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+				.exceptionally(error -> null)
+				.completeOnTimeout(null, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+				.thenApply(ignored -> {
+					int next = 0;
+					for (int i = 0; i < results.length; i++) {
+						if (pendingUsers[i] == null) {
+							continue;
+						}
+						User user = pendingUsers[i];
+						CompletableFuture<VisitedLocation> future = futures.get(next++);
+						if (future.isDone() && !future.isCompletedExceptionally()) {
+							VisitedLocation visitedLocation = future.join();
+							UserLocationDTO.Status status = visitedLocation instanceof StaleVisitedLocation
+									? UserLocationDTO.Status.STALE : UserLocationDTO.Status.TRACKED;
+							results[i] = toUserLocation(users.get(i), user, status, visitedLocation);
+						} else {
+							VisitedLocation last = lastLocation(user);
+							UserLocationDTO.Status status = future.isDone() ? UserLocationDTO.Status.FAILED
+									: last == null ? UserLocationDTO.Status.UNAVAILABLE : UserLocationDTO.Status.STALE;
+							results[i] = toUserLocation(users.get(i), user, status, last);
+						}
+					}
+					return List.of(results);
+				});
+	}
+
+	private User findUser(String key) {
+		User user = getUser(key);
+		if (user == null) {
+			try {
+				user = userRegistry.getById(UUID.fromString(key));
+			} catch (IllegalArgumentException e) {
+				// Ni un nom ni un UUID connu
+			}
+		}
+		return user;
+	}
+
+	private UserLocationDTO toUserLocation(String key, User user, UserLocationDTO.Status status, VisitedLocation location) {
+		return new UserLocationDTO(key, user.getUserId(), status,
+				location == null ? null : location.location, location == null ? null : location.timeVisited);
 	}
 
+	/**
+	 * Vue non modifiable des utilisateurs enregistrés à l'instant de l'appel, sans copie (voir UserRegistry.view).
+	 */
 	public List<User> getAllUsers() {
-		return new ArrayList<>(internalUserMap.values());
+		return userRegistry.view();
+	}
+
+	public UserRegistry getUserRegistry() {
+		return userRegistry;
+	}
+
+	public UserPositionStore getPositionStore() {
+		return positionStore;
+	}
+
+	/**
+	 * Parcourt les utilisateurs sans copier la collection (export en flux).
+	 * L'itération est faiblement cohérente : un utilisateur ajouté pendant le parcours peut être vu ou non.
+	 */
+	public void forEachUser(Consumer<User> action) {
+		userRegistry.forEach(action);
 	}
 
 	public void addUser(User user) {
-		if (!internalUserMap.containsKey(user.getUserName())) {
-			internalUserMap.put(user.getUserName(), user);
+		if (userRegistry.add(user)) {
+			recordLastPosition(user);
+			if (userStateStore != null) {
+				userStateStore.userAdded(user);
+				user.getVisitedLocationHistory().forEach(userStateStore::locationVisited);
+			}
+		}
+	}
+
+	private UserStateStore openUserStateStore(TourGuideProperties.Persistence persistence) {
+		if (!persistence.isEnabled()) {
+			return null;
+		}
+		try {
+			return new UserStateStore(persistence);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Recharge les utilisateurs persistés lors d'une exécution précédente.
+	 *
+	 * @return false si la persistance est désactivée ou si rien n'a encore été persisté
+	 */
+	private boolean restoreUsers() {
+		if (userStateStore == null) {
+			return false;
+		}
+		try {
+			List<User> users = userStateStore.recover(retentionPolicy);
+			for (User user : users) {
+				userRegistry.add(user);
+				recordLastPosition(user);
+			}
+			return !users.isEmpty();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void snapshotUsers() {
+		if (userStateStore == null) {
+			return;
+		}
+		try {
+			userStateStore.snapshot(userRegistry);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Charge la population initiale : état persisté s'il existe, utilisateurs internes sinon.
+	 */
+	private void loadUsers() {
+		try {
+			boolean restored = restoreUsers();
+			if (testMode && !restored) {
+				logger.debug("Initializing users");
+				initializeInternalUsers();
+				logger.debug("Finished initializing users");
+				snapshotUsers();
+			}
+			usersLoaded.complete(null);
+		} catch (RuntimeException e) {
+			logger.error("Could not load users", e);
+			usersLoaded.completeExceptionally(e);
+			throw e;
 		}
 	}
 
+	/**
+	 * Vrai une fois la population initiale chargée ; l'indicateur de santé userPopulation en dépend.
+	 */
+	public boolean isUsersLoaded() {
+		return usersLoaded.isDone() && !usersLoaded.isCompletedExceptionally();
+	}
+
+	public CompletableFuture<Void> getUsersLoaded() {
+		return usersLoaded;
+	}
+
+	public int getUserCount() {
+		return userRegistry.size();
+	}
+
+	public UserStateStore getUserStateStore() {
+		return userStateStore;
+	}
+
+	/**
+	 * Dernière position connue, lue dans le magasin de positions sans verrou. L'historique ne sert que pour un
+	 * utilisateur qui n'y a pas encore de position (utilisateur manipulé hors du service).
+	 */
+	private VisitedLocation lastLocation(User user) {
+		VisitedLocation last = positionStore.get(user.getUserId());
+		return last != null ? last : user.getVisitedLocationHistory().getLast();
+	}
+
+	private void recordLastPosition(User user) {
+		int slot = positionStore.register(user.getUserId());
+		VisitedLocation last = user.getVisitedLocationHistory().getLast();
+		if (last != null) {
+			positionStore.update(slot, last.location.latitude, last.location.longitude, last.timeVisited.getTime());
+		}
+	}
+
+	/**
+	 * Offres de voyage de l'utilisateur, servies par le cache tant que ses préférences et son total de points
+	 * n'ont pas changé.
+	 */
 	public List<Provider> getTripDeals(User user) {
-		int cumulatativeRewardPoints = user.getUserRewards().stream().mapToInt(i -> i.getRewardPoints()).sum();
-		List<Provider> providers = tripPricer.getPrice(tripPricerApiKey, user.getUserId(),
-				user.getUserPreferences().getNumberOfAdults(), user.getUserPreferences().getNumberOfChildren(),
-				user.getUserPreferences().getTripDuration(), cumulatativeRewardPoints);
-		user.setTripDeals(providers);
-		return providers;
+		return getTripDealsAsync(user).join();
 	}
 
+	public CompletableFuture<List<Provider>> getTripDealsAsync(User user) {
+		return tripDealsCache.getTripDeals(user).thenApply(providers -> {
+			user.setTripDeals(providers);
+			return providers;
+		});
+	}
+
+	public TripDealsCache getTripDealsCache() {
+		return tripDealsCache;
+	}
+
+	/**
+	 * Demande la position courante à GpsUtil et la fait traverser le pipeline de suivi (enregistrement, proximité,
+	 * points, attribution) ; le futur se termine une fois les récompenses de la nouvelle position attribuées.
+	 * Si GpsUtil ne répond pas à temps ou si son disjoncteur est ouvert, la dernière position connue est renvoyée
+	 * sous forme de StaleVisitedLocation, sans toucher à l'historique. Un appel qui n'obtient pas de place dans la
+	 * cloison avant l'échéance échoue avec une GpsBulkheadFullException.
+	 * Les demandes simultanées pour un même utilisateur (endpoints, Tracker) partagent un seul appel à GpsUtil ;
+	 * avec tourguide.tracking.reuse-max-age, une position assez récente est renvoyée sans appel.
+	 */
 	public CompletableFuture<VisitedLocation> trackUserLocation(User user) {
-		return CompletableFuture.supplyAsync(() -> {
-			VisitedLocation visitedLocation = gpsUtil.getUserLocation(user.getUserId());
-			return visitedLocation;
-		}, executor).thenApplyAsync(visitedLocation -> {
-			user.addToVisitedLocations(visitedLocation);
-			rewardsService.calculateRewardsAsync(user).join();
-			return visitedLocation;
-		}, executor);
+		return trackUserLocation(user, LocationEvent::completed);
 	}
 
+	/**
+	 * Comme trackUserLocation, mais le futur se termine dès que la position est enregistrée ; les récompenses suivent
+	 * dans le pipeline. Utilisé par le Tracker, dont le débit ne dépend ainsi pas de la latence de RewardCentral.
+	 */
+	public CompletableFuture<VisitedLocation> ingestUserLocation(User user) {
+		return trackUserLocation(user, LocationEvent::ingested);
+	}
 
+	private CompletableFuture<VisitedLocation> trackUserLocation(User user,
+			Function<LocationEvent, CompletableFuture<VisitedLocation>> stage) {
+		// Fraîcheur lue dans le magasin de positions sans allocation ; la position réutilisée est celle de l'historique
+		if (reuseMaxAgeMillis > 0
+				&& positionStore.getTimeMillis(user.getUserId()) >= System.currentTimeMillis() - reuseMaxAgeMillis) {
+			VisitedLocation last = user.getVisitedLocationHistory().getLast();
+			if (last != null) {
+				trackingReused.increment();
+				return CompletableFuture.completedFuture(last);
+			}
+		}
+		CompletableFuture<LocationEvent> created = new CompletableFuture<>();
+		CompletableFuture<LocationEvent> inFlight = trackingInFlight.putIfAbsent(user.getUserId(), created);
+		if (inFlight != null) {
+			trackingCoalesced.increment();
+			// thenCompose : un appelant qui annule son futur n'affecte pas les autres
+			return inFlight.thenCompose(stage);
+		}
+		fetchLocation(user).whenComplete((event, error) -> {
+			if (error != null) {
+				trackingInFlight.remove(user.getUserId(), created);
+				created.completeExceptionally(error);
+				return;
+			}
+			// Partagé jusqu'à l'enregistrement de la position
+			event.ingested().whenComplete((visitedLocation, e) -> trackingInFlight.remove(user.getUserId(), created));
+			created.complete(event);
+		});
+		return created.thenCompose(stage);
+	}
 
+	private CompletableFuture<LocationEvent> fetchLocation(User user) {
+		return gpsLocationClient.getUserLocation(user.getUserId())
+				.handle((visitedLocation, error) -> error == null ? visitedLocation : lastKnownLocation(user, error))
+				.thenApply(visitedLocation -> visitedLocation instanceof StaleVisitedLocation
+						? LocationEvent.done(user, visitedLocation)
+						: locationPipeline.submit(user, visitedLocation));
+	}
+
+	private VisitedLocation lastKnownLocation(User user, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		// Cloison pleine : surcharge de l'application, signalée comme un échec plutôt que masquée par une position ancienne
+		VisitedLocation last = cause instanceof GpsBulkheadFullException ? null : lastLocation(user);
+		if (last == null) {
+			throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+		}
+		gpsFallbacks.increment();
+		logger.debug("GpsUtil unavailable for user " + user.getUserId() + ", using last known location: " + error);
+		return new StaleVisitedLocation(last);
+	}
+
+	public GpsLocationClient getGpsLocationClient() {
+		return gpsLocationClient;
+	}
 
-	public List<NearbyAttractionDTO> getNearByAttractions(VisitedLocation visitedLocation) {
-		Location userLocation = visitedLocation.location;
 
-		List<Attraction> nearestAttractions = gpsUtil.getAttractions().stream()
-				.sorted(Comparator.comparingDouble(attraction -> rewardsService.getDistance(visitedLocation.location, attraction)))
-				.limit(5)
-				.collect(Collectors.toList());
 
-		List<NearbyAttractionDTO> nearbyAttractionDTOs = new ArrayList<>();
 
-		for (Attraction attraction : nearestAttractions) {
-			NearbyAttractionDTO nearbyAttractionDTO = new NearbyAttractionDTO();
-			nearbyAttractionDTO.setAttractionName(attraction.attractionName);
-			Location locationAttraction = new Location(attraction.latitude, attraction.longitude);
-			nearbyAttractionDTO.setAttractionLocation(locationAttraction);
+	public List<NearbyAttractionDTO> getNearByAttractions(VisitedLocation visitedLocation) {
+		return getNearByAttractions(visitedLocation, DEFAULT_NEARBY_ATTRACTIONS);
+	}
+
+	/**
+	 * Les count attractions les plus proches de la position, de la plus proche à la plus éloignée.
+	 * La sélection se fait en un seul parcours du catalogue ; les points de récompense des attractions retenues
+	 * sont ensuite demandés en parallèle, sous une échéance commune.
+	 */
+	public List<NearbyAttractionDTO> getNearByAttractions(VisitedLocation visitedLocation, int count) {
+		return getNearByAttractionsAsync(visitedLocation, count).join();
+	}
+
+	/**
+	 * Variante non bloquante de getNearByAttractions : le futur se termine au plus tard à l'échéance
+	 * des appels à RewardCentral.
+	 */
+	public CompletableFuture<List<NearbyAttractionDTO>> getNearByAttractionsAsync(VisitedLocation visitedLocation,
+			int count) {
+		if (count <= 0 || count > nearbyAttractions.getMaxCount()) {
+			throw new IllegalArgumentException("count must be between 1 and " + nearbyAttractions.getMaxCount()
+					+ ": " + count);
+		}
+		long deadline = System.nanoTime() + nearbyAttractions.getDeadline().toNanos();
+		Location userLocation = visitedLocation.location;
 
-			nearbyAttractionDTO.setUserLocation(userLocation);
-			double distance = rewardsService.getDistance(visitedLocation.location, attraction);
-			nearbyAttractionDTO.setDistanceMiles(distance);
+		// Sélection des plus proches : tableau trié borné à count, alimenté par insertion
+		AttractionSnapshot snapshot = rewardsService.getAttractionCatalog().getSnapshot();
+		GeoPoint point = GeoPoint.of(userLocation);
+		int size = Math.min(count, snapshot.size());
+		int[] nearest = new int[size];
+		double[] distances = new double[size];
+		int found = 0;
+		for (int i = 0; i < snapshot.size(); i++) {
+			double distance = snapshot.getDistance(i, point);
+			if (found == size && distance >= distances[size - 1]) {
+				continue;
+			}
+			int position = found < size ? found++ : size - 1;
+			while (position > 0 && distances[position - 1] > distance) {
+				nearest[position] = nearest[position - 1];
+				distances[position] = distances[position - 1];
+				position--;
+			}
+			nearest[position] = i;
+			distances[position] = distance;
+		}
 
-			int rewardPoints = rewardsService.getRewardsCentral().getAttractionRewardPoints(attraction.attractionId, visitedLocation.userId);
-			nearbyAttractionDTO.setRewardPoints(rewardPoints);
+		// Points chargés par le cache asynchrone sur l'exécuteur des récompenses, hors de celui du suivi
+		List<CompletableFuture<Integer>> rewardPoints = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			rewardPoints.add(rewardsService.getRewardPointsAsync(snapshot.get(nearest[i]), visitedLocation.userId));
+		}
+		// Les points manquants à l'échéance sont renvoyés à null
+		return CompletableFuture.allOf(rewardPoints.toArray(new CompletableFuture[0]))
+				.exceptionally(error -> null)
+				.completeOnTimeout(null, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+				.thenApply(ignored -> {
+					List<NearbyAttractionDTO> nearbyAttractionDTOs = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						Attraction attraction = snapshot.get(nearest[i]);
+						CompletableFuture<Integer> points = rewardPoints.get(i);
+						nearbyAttractionDTOs.add(new NearbyAttractionDTO(attraction.attractionName,
+								new Location(attraction.latitude, attraction.longitude), userLocation, distances[i],
+								points.isDone() && !points.isCompletedExceptionally() ? points.join() : null));
+					}
+					return nearbyAttractionDTOs;
+				});
+	}
 
-			nearbyAttractionDTOs.add(nearbyAttractionDTO);
+	/**
+	 * Arrêt propre, à la destruction du bean : le Tracker s'arrête, le pipeline de suivi traite ce qui lui a été
+	 * soumis, puis l'état persisté est fermé après un dernier snapshot.
+	 */
+	@PreDestroy
+	public void close() {
+		tracker.stopTracking();
+		locationPipeline.close();
+		if (userStateStore != null) {
+			try {
+				userStateStore.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 		}
-		return nearbyAttractionDTOs;
 	}
 
 	private void addShutDownHook() {
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			public void run() {
 				tracker.stopTracking();
+				if (userStateStore != null) {
+					userStateStore.flush();
+				}
 			}
 		});
 	}
@@ -148,41 +623,103 @@ public class TourGuideService {
 	 *
 	 **********************************************************************************/
 	private static final String tripPricerApiKey = "test-server-api-key";
-	private final Map<String, User> internalUserMap = new HashMap<>();
+	private static final String INTERNAL_USER_PREFIX = "internalUser";
 
+	/**
+	 * Crée les utilisateurs internes en parallèle, ou les relit depuis le fichier de population pré-générée.
+	 * Chaque utilisateur a son propre générateur, dérivé de la graine et de son rang : la population ne dépend
+	 * ni de l'ordre ni du nombre de threads.
+	 */
 	private void initializeInternalUsers() {
-		IntStream.range(0, InternalTestHelper.getInternalUserNumber()).forEach(i -> {
-			String userName = "internalUser" + i;
-			String phone = "000";
-			String email = userName + "@tourGuide.com";
-			User user = new User(UUID.randomUUID(), userName, phone, email);
-			generateUserLocationHistory(user);
-			internalUserMap.put(userName, user);
+		long start = System.nanoTime();
+		Path snapshotFile = bootstrap.getSnapshotFile() == null ? null : Path.of(bootstrap.getSnapshotFile());
+		List<User> users;
+		try {
+			if (snapshotFile != null && Files.exists(snapshotFile)) {
+				users = new ArrayList<>();
+				UserSnapshotFile.read(snapshotFile, retentionPolicy, users::add);
+			} else {
+				long now = System.currentTimeMillis();
+				User[] generated = new User[InternalTestHelper.getInternalUserNumber()];
+				IntStream.range(0, generated.length).parallel().forEach(i -> generated[i] = generateInternalUser(i, now));
+				users = Arrays.asList(generated);
+				if (snapshotFile != null) {
+					UserSnapshotFile.write(snapshotFile, users, EventLog.Position.START);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		users.forEach(user -> {
+			userRegistry.add(user);
+			recordLastPosition(user);
 		});
-		logger.debug("Created " + InternalTestHelper.getInternalUserNumber() + " internal test users.");
+		logger.debug("Created " + users.size() + " internal test users in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+	}
+
+	/**
+	 * Mode LAZY : crée l'utilisateur interne désigné par son nom (internalUserN, N inférieur au nombre d'utilisateurs
+	 * internes), identique à celui qu'aurait créé le chargement complet avec la même graine.
+	 */
+	private User createInternalUserOnDemand(String userName) {
+		if (!userName.startsWith(INTERNAL_USER_PREFIX)) {
+			return null;
+		}
+		int index;
+		try {
+			index = Integer.parseInt(userName.substring(INTERNAL_USER_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (index < 0 || index >= InternalTestHelper.getInternalUserNumber()
+				|| !userName.equals(INTERNAL_USER_PREFIX + index)) {
+			return null;
+		}
+		addUser(generateInternalUser(index, System.currentTimeMillis()));
+		return userRegistry.getByName(userName);
+	}
+
+	private User generateInternalUser(int index, long now) {
+		SplittableRandom random = new SplittableRandom(mix(bootstrapSeed + index * 0x9E3779B97F4A7C15L));
+		String userName = INTERNAL_USER_PREFIX + index;
+		String phone = "000";
+		String email = userName + "@tourGuide.com";
+		UUID userId = new UUID((random.nextLong() & ~0xF000L) | 0x4000L,
+				(random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L);
+		User user = new User(userId, userName, phone, email, retentionPolicy);
+		generateUserLocationHistory(user, random, now);
+		return user;
+	}
+
+	// Brassage (SplitMix64) : des graines voisines donnent des suites indépendantes
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
-	private void generateUserLocationHistory(User user) {
+	private void generateUserLocationHistory(User user, SplittableRandom random, long now) {
 		IntStream.range(0, 3).forEach(i -> {
 			user.addToVisitedLocations(new VisitedLocation(user.getUserId(),
-					new Location(generateRandomLatitude(), generateRandomLongitude()), getRandomTime()));
+					new Location(generateRandomLatitude(random), generateRandomLongitude(random)),
+					getRandomTime(random, now)));
 		});
 	}
 
-	private double generateRandomLongitude() {
+	private double generateRandomLongitude(SplittableRandom random) {
 		double leftLimit = -180;
 		double rightLimit = 180;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+		return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
 	}
 
-	private double generateRandomLatitude() {
+	private double generateRandomLatitude(SplittableRandom random) {
 		double leftLimit = -85.05112878;
 		double rightLimit = 85.05112878;
-		return leftLimit + new Random().nextDouble() * (rightLimit - leftLimit);
+		return leftLimit + random.nextDouble() * (rightLimit - leftLimit);
 	}
 
-	private Date getRandomTime() {
-		LocalDateTime localDateTime = LocalDateTime.now().minusDays(new Random().nextInt(30));
-		return Date.from(localDateTime.toInstant(ZoneOffset.UTC));
+	private Date getRandomTime(SplittableRandom random, long now) {
+		return new Date(now - TimeUnit.DAYS.toMillis(random.nextInt(30)));
 	}
-}
\ No newline at end of file
+}
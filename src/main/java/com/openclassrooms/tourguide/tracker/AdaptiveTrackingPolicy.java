@@ -0,0 +1,94 @@
+package com.openclassrooms.tourguide.tracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Intervalle de suivi propre à chaque utilisateur, borné par minInterval et maxInterval.
+ *
+ * La vitesse est estimée sur les dernières positions de l'historique, multipliée par speedMargin et jamais inférieure
+ * à minSpeed (un utilisateur immobile peut repartir). L'intervalle retenu est le plus court entre :
+ * <ul>
+ * <li>le temps nécessaire, à cette vitesse, pour atteindre la zone de récompense de l'attraction la plus proche :
+ * aucune récompense n'est manquée, et un utilisateur déjà à portée d'une attraction est suivi à chaque cycle ;</li>
+ * <li>maxInterval réduit en proportion de la vitesse : un utilisateur en mouvement est suivi plus souvent.</li>
+ * </ul>
+ * Sans au moins deux positions dans l'historique, l'utilisateur est suivi à chaque cycle.
+ */
+public class AdaptiveTrackingPolicy {
+	private static final double MILLIS_PER_HOUR = 3_600_000;
+
+	private final RewardsService rewardsService;
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final double minSpeedMph;
+	private final double speedMargin;
+	private final int speedWindow;
+
+	public AdaptiveTrackingPolicy(RewardsService rewardsService, TourGuideProperties.Tracker properties) {
+		TourGuideProperties.Tracker.Adaptive adaptive = properties.getAdaptive();
+		this.rewardsService = rewardsService;
+		// Le Tracker suit par cycles : un intervalle plus court que le sien n'aurait pas d'effet
+		long pollingIntervalMillis = properties.getPollingInterval().toMillis();
+		this.minIntervalMillis = adaptive.getMinInterval() == null ? pollingIntervalMillis
+				: Math.max(pollingIntervalMillis, adaptive.getMinInterval().toMillis());
+		this.maxIntervalMillis = Math.max(minIntervalMillis, adaptive.getMaxInterval().toMillis());
+		this.minSpeedMph = adaptive.getMinSpeedMph();
+		this.speedMargin = adaptive.getSpeedMargin();
+		this.speedWindow = Math.max(2, adaptive.getSpeedWindow());
+	}
+
+	/**
+	 * Délai avant le prochain suivi de l'utilisateur, calculé sur son historique courant.
+	 */
+	public long nextIntervalMillis(User user) {
+		VisitedLocationHistory history = user.getVisitedLocationHistory();
+		long end = history.getAppendedCount();
+		List<VisitedLocation> recent = new ArrayList<>(speedWindow);
+		history.forEachBetween(end - speedWindow, end, recent::add);
+		if (recent.size() < 2) {
+			return minIntervalMillis;
+		}
+
+		double speedMph = Math.max(minSpeedMph, estimateSpeedMph(recent) * speedMargin);
+		double horizonMiles = speedMph * maxIntervalMillis / MILLIS_PER_HOUR;
+		double distanceMiles = rewardsService.getDistanceToRewardZone(recent.get(recent.size() - 1).location,
+				horizonMiles);
+		double untilRewardZone = distanceMiles / speedMph * MILLIS_PER_HOUR;
+		double bySpeed = maxIntervalMillis * minSpeedMph / speedMph;
+		return Math.max(minIntervalMillis, (long) Math.min(untilRewardZone, bySpeed));
+	}
+
+	/**
+	 * Vitesse la plus élevée, en miles par heure, entre deux positions consécutives.
+	 * Deux positions distinctes relevées au même instant donnent une vitesse infinie.
+	 */
+	private double estimateSpeedMph(List<VisitedLocation> recent) {
+		double speed = 0;
+		for (int i = 1; i < recent.size(); i++) {
+			VisitedLocation from = recent.get(i - 1);
+			VisitedLocation to = recent.get(i);
+			double miles = rewardsService.getDistance(from.location, to.location);
+			double hours = (to.timeVisited.getTime() - from.timeVisited.getTime()) / MILLIS_PER_HOUR;
+			if (miles > 0) {
+				speed = Math.max(speed, hours > 0 ? miles / hours : Double.POSITIVE_INFINITY);
+			}
+		}
+		return speed;
+	}
+
+	public long getMinIntervalMillis() {
+		return minIntervalMillis;
+	}
+
+	public long getMaxIntervalMillis() {
+		return maxIntervalMillis;
+	}
+}
@@ -1,28 +1,110 @@
 package com.openclassrooms.tourguide.tracker;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.gps.StaleVisitedLocation;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
 
-public class Tracker extends Thread {
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Boucle de suivi des utilisateurs.
+ * Chaque cycle est planifié à intervalle fixe sur un ScheduledExecutorService, découpe les utilisateurs en shards
+ * et attend que la position de chaque utilisateur soit enregistrée, avec un nombre borné de suivis en cours.
+ * Les récompenses sont attribuées ensuite par le pipeline de suivi, sans retenir le cycle.
+ * Un cycle qui démarre avec plus d'un intervalle de retard est sauté plutôt que d'empiler le travail.
+ * Avec le suivi adaptatif, un cycle ne suit que les utilisateurs dont le prochain suivi est dû ; les autres sont
+ * comptés dans tourguide.tracker.polls.saved (appels à GpsUtil évités).
+ */
+public class Tracker {
 	private Logger logger = LoggerFactory.getLogger(Tracker.class);
-	private static final long trackingPollingInterval = TimeUnit.MINUTES.toSeconds(5);
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "tracker");
+		thread.setDaemon(true);
+		return thread;
+	});
 	private final TourGuideService tourGuideService;
-	private boolean stop = false;
+	private final long pollingIntervalMillis;
+	private final int shards;
+	private final Semaphore inFlight;
+	// null : tous les utilisateurs sont suivis à chaque cycle
+	private final AdaptiveTrackingPolicy adaptivePolicy;
+	private volatile boolean stop = false;
+
+	private long nextCycleStart;
+	private final AtomicLong completedCycles = new AtomicLong();
+	private final AtomicLong skippedCycles = new AtomicLong();
+	private volatile long lastCycleDurationMillis;
+	private volatile long lastCycleLagMillis;
+	private volatile int lastCycleUsers;
+	private volatile int lastCycleFailures;
+	private volatile int lastCycleSavedPolls;
+
+	private final Timer cycleTimer;
+	private final Counter usersCounter;
+	private final Counter failuresCounter;
+	private final Counter skippedCounter;
+	private final Counter savedPollsCounter;
 
 	public Tracker(TourGuideService tourGuideService) {
+		this(tourGuideService, new TourGuideProperties.Tracker());
+	}
+
+	public Tracker(TourGuideService tourGuideService, TourGuideProperties.Tracker properties) {
+		this(tourGuideService, properties, Metrics.globalRegistry);
+	}
+
+	public Tracker(TourGuideService tourGuideService, TourGuideProperties.Tracker properties, MeterRegistry registry) {
+		this(tourGuideService, properties, null, registry);
+	}
+
+	public Tracker(TourGuideService tourGuideService, TourGuideProperties.Tracker properties,
+			AdaptiveTrackingPolicy adaptivePolicy, MeterRegistry registry) {
 		this.tourGuideService = tourGuideService;
+		this.adaptivePolicy = adaptivePolicy;
+		this.pollingIntervalMillis = properties.getPollingInterval().toMillis();
+		this.shards = Math.max(1, properties.getShards());
+		this.inFlight = new Semaphore(properties.getMaxInFlight());
 
-		executorService.submit(this);
+		this.cycleTimer = Timer.builder(TourGuideMetrics.TRACKER_CYCLE)
+				.description("Duration of complete tracker cycles")
+				.register(registry);
+		this.usersCounter = Counter.builder(TourGuideMetrics.TRACKER_USERS)
+				.description("Users tracked by completed cycles")
+				.register(registry);
+		this.failuresCounter = Counter.builder(TourGuideMetrics.TRACKER_FAILURES).register(registry);
+		this.skippedCounter = Counter.builder(TourGuideMetrics.TRACKER_SKIPPED).register(registry);
+		this.savedPollsCounter = Counter.builder(TourGuideMetrics.TRACKER_POLLS_SAVED)
+				.description("Users not tracked by a completed cycle because their next adaptive tracking was not due")
+				.register(registry);
+		Gauge.builder(TourGuideMetrics.TRACKER_LAG, this, Tracker::getLastCycleLagMillis)
+				.baseUnit("milliseconds")
+				.register(registry);
+		int maxInFlight = properties.getMaxInFlight();
+		Gauge.builder(TourGuideMetrics.TRACKER_IN_FLIGHT, inFlight, s -> maxInFlight - s.availablePermits())
+				.register(registry);
+
+		nextCycleStart = System.currentTimeMillis();
+		scheduler.scheduleAtFixedRate(this::runCycle, 0, pollingIntervalMillis, TimeUnit.MILLISECONDS);
 	}
 
 	/**
@@ -30,32 +112,128 @@ public class Tracker extends Thread {
 	 */
 	public void stopTracking() {
 		stop = true;
-		executorService.shutdownNow();
+		scheduler.shutdownNow();
 	}
 
-	@Override
-	public void run() {
-		StopWatch stopWatch = new StopWatch();
-		while (true) {
-			if (Thread.currentThread().isInterrupted() || stop) {
-				logger.debug("Tracker stopping");
-				break;
+	private void runCycle() {
+		long start = System.currentTimeMillis();
+		long lag = start - nextCycleStart;
+		nextCycleStart += pollingIntervalMillis;
+		if (stop) {
+			return;
+		}
+		// Le cycle précédent a débordé sur tout un intervalle : on saute celui-ci pour se recaler
+		if (lag >= pollingIntervalMillis) {
+			skippedCycles.incrementAndGet();
+			skippedCounter.increment();
+			logger.warn("Tracker cycle skipped, lagging by " + lag + " ms.");
+			return;
+		}
+
+		List<User> users = tourGuideService.getAllUsers();
+		logger.debug("Begin Tracker. Tracking " + users.size() + " users in " + shards + " shards.");
+		AtomicInteger failures = new AtomicInteger();
+		int tracked = 0;
+		try {
+			int shardSize = (users.size() + shards - 1) / shards;
+			for (int from = 0; from < users.size() && !stop; from += shardSize) {
+				tracked += trackShard(users.subList(from, Math.min(from + shardSize, users.size())), start, failures);
 			}
+		} catch (InterruptedException e) {
+			logger.debug("Tracker stopping");
+			Thread.currentThread().interrupt();
+			return;
+		} catch (RuntimeException e) {
+			// Une exception non rattrapée annulerait toutes les exécutions suivantes du ScheduledExecutorService
+			logger.error("Tracker cycle aborted", e);
+			return;
+		}
 
-			List<User> users = tourGuideService.getAllUsers();
-			logger.debug("Begin Tracker. Tracking " + users.size() + " users.");
-			stopWatch.start();
-			users.forEach(u -> tourGuideService.trackUserLocation(u));
-			stopWatch.stop();
-			logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()) + " seconds.");
-			stopWatch.reset();
+		int savedPolls = users.size() - tracked;
+		lastCycleDurationMillis = System.currentTimeMillis() - start;
+		lastCycleLagMillis = lag;
+		lastCycleUsers = tracked;
+		lastCycleFailures = failures.get();
+		lastCycleSavedPolls = savedPolls;
+		completedCycles.incrementAndGet();
+		cycleTimer.record(lastCycleDurationMillis, TimeUnit.MILLISECONDS);
+		usersCounter.increment(tracked);
+		failuresCounter.increment(failures.get());
+		savedPollsCounter.increment(savedPolls);
+		logger.debug("Tracker Time Elapsed: " + TimeUnit.MILLISECONDS.toSeconds(lastCycleDurationMillis)
+				+ " seconds (lag " + lag + " ms, " + failures.get() + " failures, " + savedPolls + " not due).");
+	}
+
+	/**
+	 * Lance le suivi des utilisateurs d'un shard, sans jamais dépasser maxInFlight suivis en cours,
+	 * et attend qu'ils soient tous terminés.
+	 * Avec le suivi adaptatif, le prochain suivi d'un utilisateur est compté depuis le début du cycle,
+	 * pour qu'un intervalle égal à celui du Tracker le rende dû au cycle suivant ; un échec le laisse dû.
+	 * La dernière position connue renvoyée faute de réponse de GpsUtil (StaleVisitedLocation) compte comme un échec :
+	 * l'utilisateur n'a pas été suivi.
+	 * Les utilisateurs pas encore dus sont écartés au fil du parcours, sans copie de la liste.
+	 *
+	 * @return le nombre d'utilisateurs suivis
+	 */
+	private int trackShard(List<User> shard, long cycleStart, AtomicInteger failures) throws InterruptedException {
+		List<CompletableFuture<?>> futures = new ArrayList<>();
+		for (User user : shard) {
+			if (adaptivePolicy != null && user.getNextTrackingMillis() > cycleStart) {
+				continue;
+			}
+			inFlight.acquire();
+			CompletableFuture<?> future;
 			try {
-				logger.debug("Tracker sleeping");
-				TimeUnit.SECONDS.sleep(trackingPollingInterval);
-			} catch (InterruptedException e) {
-				break;
+				future = tourGuideService.ingestUserLocation(user);
+			} catch (RuntimeException e) {
+				inFlight.release();
+				throw e;
 			}
+			futures.add(future.whenComplete((visitedLocation, e) -> {
+				inFlight.release();
+				if (e != null || visitedLocation instanceof StaleVisitedLocation) {
+					failures.incrementAndGet();
+				} else if (adaptivePolicy != null) {
+					user.setNextTrackingMillis(cycleStart + adaptivePolicy.nextIntervalMillis(user));
+				}
+			}));
+		}
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+		} catch (ExecutionException e) {
+			logger.warn("Tracker shard completed with failures", e.getCause());
 		}
+		return futures.size();
+	}
+
+	public long getCompletedCycles() {
+		return completedCycles.get();
+	}
+
+	public long getSkippedCycles() {
+		return skippedCycles.get();
+	}
+
+	public long getLastCycleDurationMillis() {
+		return lastCycleDurationMillis;
+	}
 
+	public long getLastCycleLagMillis() {
+		return lastCycleLagMillis;
+	}
+
+	public int getLastCycleUsers() {
+		return lastCycleUsers;
+	}
+
+	public int getLastCycleFailures() {
+		return lastCycleFailures;
+	}
+
+	/**
+	 * Utilisateurs non suivis par le dernier cycle terminé, leur prochain suivi adaptatif n'étant pas dû.
+	 */
+	public int getLastCycleSavedPolls() {
+		return lastCycleSavedPolls;
 	}
 }
@@ -1,10 +1,17 @@
 package com.openclassrooms.tourguide.user;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import tripPricer.Provider;
+import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
 
 public class User {
@@ -14,17 +21,32 @@ public class User {
 	private String emailAddress;
 	private Date latestLocationTimestamp;
 
-	private List<VisitedLocation> visitedLocations = new CopyOnWriteArrayList<>();
+	private final VisitedLocationHistory visitedLocations;
 	private List<UserReward> userRewards = new CopyOnWriteArrayList<>();
+	// Index des récompenses par nom d'attraction. AttractionCatalog garde les attractionId stables pendant la vie
+	// du processus, mais pas au-delà : les récompenses rechargées depuis le journal ou un snapshot recréent leur
+	// Attraction avec un nouvel identifiant, comme toute Attraction obtenue directement de GpsUtil.
+	// Une entrée est posée avant l'appel à RewardCentral, son futur se termine quand la récompense est enregistrée.
+	private final Map<String, CompletableFuture<UserReward>> rewardClaims = new ConcurrentHashMap<>(4);
+	// Séquence (dans VisitedLocationHistory) de la première position pas encore évaluée pour les récompenses
+	private final AtomicLong rewardWatermark = new AtomicLong();
+	// Date (epoch ms) à partir de laquelle le suivi adaptatif redemande la position ; 0 = dès le prochain cycle
+	private volatile long nextTrackingMillis;
 
 	private UserPreferences userPreferences = new UserPreferences();
 	private List<Provider> tripDeals = new CopyOnWriteArrayList<>();
 
 	public User(UUID userId, String userName, String phoneNumber, String emailAddress) {
+		this(userId, userName, phoneNumber, emailAddress, VisitedLocationHistory.RetentionPolicy.DEFAULT);
+	}
+
+	public User(UUID userId, String userName, String phoneNumber, String emailAddress,
+			VisitedLocationHistory.RetentionPolicy retentionPolicy) {
 		this.userId = userId;
 		this.userName = userName;
 		this.phoneNumber = phoneNumber;
 		this.emailAddress = emailAddress;
+		this.visitedLocations = new VisitedLocationHistory(retentionPolicy);
 	}
 
 	public UUID getUserId() {
@@ -67,18 +89,108 @@ public class User {
 		return visitedLocations;
 	}
 
+	public VisitedLocationHistory getVisitedLocationHistory() {
+		return visitedLocations;
+	}
+
 	public void clearVisitedLocations() {
 		visitedLocations.clear();
+		rewardWatermark.set(0);
+	}
+
+	public long getRewardWatermark() {
+		return rewardWatermark.get();
+	}
+
+	/**
+	 * Avance le watermark ; ne recule jamais si deux calculs concurrents terminent dans le désordre.
+	 */
+	public void advanceRewardWatermark(long evaluatedLocations) {
+		rewardWatermark.accumulateAndGet(evaluatedLocations, Math::max);
+	}
+
+	public long getNextTrackingMillis() {
+		return nextTrackingMillis;
+	}
+
+	public void setNextTrackingMillis(long nextTrackingMillis) {
+		this.nextTrackingMillis = nextTrackingMillis;
 	}
 
 	public void addUserReward(UserReward userReward) {
-		if (userRewards.stream().noneMatch(r -> r.attraction.attractionName.equals(userReward.attraction.attractionName))) {
+		CompletableFuture<UserReward> claim = CompletableFuture.completedFuture(userReward);
+		if (rewardClaims.putIfAbsent(userReward.attraction.attractionName, claim) == null) {
 			userRewards.add(userReward);
 		}
 	}
 
+	/**
+	 * Attribue la récompense d'une attraction si elle n'est pas déjà attribuée ou en cours d'attribution.
+	 * La réservation est atomique et précède l'appel à rewardSupplier : RewardCentral n'est appelé qu'une fois
+	 * par attraction, même avec des calculs concurrents. Le futur renvoyé se termine quand la récompense
+	 * est enregistrée, par cet appel ou par celui qui détenait déjà la réservation.
+	 */
+	public CompletableFuture<UserReward> claimReward(Attraction attraction, Supplier<UserReward> rewardSupplier) {
+		CompletableFuture<UserReward> claim = new CompletableFuture<>();
+		CompletableFuture<UserReward> existing = reserveReward(attraction.attractionName, claim);
+		if (existing != null) {
+			return existing;
+		}
+		try {
+			grantReward(claim, rewardSupplier.get());
+		} catch (RuntimeException e) {
+			releaseReward(attraction.attractionName, claim, e);
+		}
+		return claim;
+	}
+
+	/**
+	 * Pose la réservation claim pour l'attraction, à honorer ensuite par grantReward ou releaseReward.
+	 * Variante de claimReward dont les étapes s'exécutent sur des threads différents (pipeline de suivi).
+	 *
+	 * @return null si la réservation est posée, sinon la réservation (ou la récompense) déjà présente
+	 */
+	public CompletableFuture<UserReward> reserveReward(String attractionName, CompletableFuture<UserReward> claim) {
+		return rewardClaims.putIfAbsent(attractionName, claim);
+	}
+
+	public void grantReward(CompletableFuture<UserReward> claim, UserReward userReward) {
+		grantReward(claim, userReward, () -> {
+		});
+	}
+
+	/**
+	 * Honore la réservation claim ; recorded est appelé après l'ajout de la récompense et avant la fin de la
+	 * réservation : qui attend la réservation trouve la récompense déjà persistée.
+	 */
+	public void grantReward(CompletableFuture<UserReward> claim, UserReward userReward, Runnable recorded) {
+		userRewards.add(userReward);
+		try {
+			recorded.run();
+		} finally {
+			claim.complete(userReward);
+		}
+	}
+
+	/**
+	 * Libère la réservation pour qu'un prochain calcul puisse réessayer.
+	 */
+	public void releaseReward(String attractionName, CompletableFuture<UserReward> claim, Throwable error) {
+		rewardClaims.remove(attractionName, claim);
+		claim.completeExceptionally(error);
+	}
+
+	public boolean hasReward(String attractionName) {
+		return rewardClaims.containsKey(attractionName);
+	}
+
 	public List<UserReward> getUserRewards() {
-		return userRewards;
+		return Collections.unmodifiableList(userRewards);
+	}
+
+	public void clearUserRewards() {
+		rewardClaims.clear();
+		userRewards.clear();
 	}
 
 	public UserPreferences getUserPreferences() {
@@ -90,7 +202,11 @@ public class User {
 	}
 
 	public VisitedLocation getLastVisitedLocation() {
-		return visitedLocations.get(visitedLocations.size() - 1);
+		VisitedLocation lastVisitedLocation = visitedLocations.getLast();
+		if (lastVisitedLocation == null) {
+			throw new IndexOutOfBoundsException("No visited location for user " + userName);
+		}
+		return lastVisitedLocation;
 	}
 
 	public void setTripDeals(List<Provider> tripDeals) {
@@ -0,0 +1,186 @@
+package com.openclassrooms.tourguide.user;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Dernière position connue de chaque utilisateur, stockée en colonnes de types primitifs (latitude, longitude, date
+ * en millisecondes) indexées par un numéro d'emplacement attribué à l'enregistrement de l'utilisateur.
+ * Les colonnes sont découpées en pages de taille fixe : l'ajout d'utilisateurs ne recopie jamais les positions existantes.
+ *
+ * Chaque emplacement est protégé par un compteur de version (seqlock) : les écritures se font en place et les lectures,
+ * sans verrou, ne voient jamais une position à moitié mise à jour. Le parcours complet n'alloue rien par utilisateur.
+ */
+public class UserPositionStore {
+	private static final int PAGE_SHIFT = 14;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final long NO_POSITION = Long.MIN_VALUE;
+
+	/**
+	 * Reçoit une position lors d'un parcours, sans objet intermédiaire.
+	 */
+	@FunctionalInterface
+	public interface PositionConsumer {
+		void accept(UUID userId, double latitude, double longitude, long timeMillis);
+	}
+
+	private static final class Page {
+		final UUID[] userIds = new UUID[PAGE_SIZE];
+		final double[] latitudes = new double[PAGE_SIZE];
+		final double[] longitudes = new double[PAGE_SIZE];
+		final long[] times = new long[PAGE_SIZE];
+		// Impair pendant une écriture
+		final AtomicLongArray versions = new AtomicLongArray(PAGE_SIZE);
+
+		Page() {
+			Arrays.fill(times, NO_POSITION);
+		}
+	}
+
+	private final ConcurrentHashMap<UUID, Integer> slots = new ConcurrentHashMap<>();
+	private volatile Page[] pages = new Page[0];
+	private volatile int size;
+
+	/**
+	 * Attribue un emplacement à l'utilisateur s'il n'en a pas encore.
+	 *
+	 * @return le numéro d'emplacement
+	 */
+	public int register(UUID userId) {
+		Integer slot = slots.get(userId);
+		return slot != null ? slot : allocate(userId);
+	}
+
+	private synchronized int allocate(UUID userId) {
+		Integer existing = slots.get(userId);
+		if (existing != null) {
+			return existing;
+		}
+		int slot = size;
+		Page[] current = pages;
+		if ((slot >>> PAGE_SHIFT) == current.length) {
+			Page[] grown = Arrays.copyOf(current, current.length + 1);
+			grown[current.length] = new Page();
+			pages = grown;
+			current = grown;
+		}
+		current[slot >>> PAGE_SHIFT].userIds[slot & PAGE_MASK] = userId;
+		size = slot + 1;
+		slots.put(userId, slot);
+		return slot;
+	}
+
+	/**
+	 * Enregistre la position si elle est plus récente que celle déjà connue (les réponses de GpsUtil
+	 * peuvent arriver dans le désordre).
+	 */
+	public void update(VisitedLocation visitedLocation) {
+		update(register(visitedLocation.userId), visitedLocation.location.latitude,
+				visitedLocation.location.longitude, visitedLocation.timeVisited.getTime());
+	}
+
+	public void update(int slot, double latitude, double longitude, long timeMillis) {
+		Page page = pages[slot >>> PAGE_SHIFT];
+		int i = slot & PAGE_MASK;
+		long version;
+		do {
+			version = page.versions.get(i);
+		} while ((version & 1) != 0 || !page.versions.compareAndSet(i, version, version + 1));
+		if (timeMillis >= page.times[i]) {
+			page.latitudes[i] = latitude;
+			page.longitudes[i] = longitude;
+			page.times[i] = timeMillis;
+		}
+		page.versions.set(i, version + 2);
+	}
+
+	/**
+	 * Dernière position connue de l'utilisateur, ou null s'il n'en a pas.
+	 */
+	public VisitedLocation get(UUID userId) {
+		Integer slot = slots.get(userId);
+		if (slot == null) {
+			return null;
+		}
+		VisitedLocation[] result = new VisitedLocation[1];
+		read(slot, (id, latitude, longitude, timeMillis) ->
+				result[0] = new VisitedLocation(id, new Location(latitude, longitude), new Date(timeMillis)));
+		return result[0];
+	}
+
+	/**
+	 * Date en millisecondes de la dernière position connue de l'utilisateur, ou Long.MIN_VALUE s'il n'en a pas.
+	 * Sans allocation : sert aux contrôles de fraîcheur avant de lire la position elle-même.
+	 */
+	public long getTimeMillis(UUID userId) {
+		Integer slot = slots.get(userId);
+		if (slot == null) {
+			return NO_POSITION;
+		}
+		Page page = pages[slot >>> PAGE_SHIFT];
+		int i = slot & PAGE_MASK;
+		while (true) {
+			long version = page.versions.get(i);
+			if ((version & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			long timeMillis = page.times[i];
+			VarHandle.acquireFence();
+			if (page.versions.get(i) == version) {
+				return timeMillis;
+			}
+		}
+	}
+
+	/**
+	 * Parcourt les emplacements dans l'ordre d'enregistrement ; ceux sans position sont ignorés.
+	 * Faiblement cohérent : un utilisateur enregistré pendant le parcours peut ne pas être vu.
+	 */
+	public void forEach(PositionConsumer action) {
+		int count = size;
+		for (int slot = 0; slot < count; slot++) {
+			read(slot, action);
+		}
+	}
+
+	/**
+	 * Nombre d'emplacements attribués.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void read(int slot, PositionConsumer action) {
+		Page page = pages[slot >>> PAGE_SHIFT];
+		int i = slot & PAGE_MASK;
+		double latitude;
+		double longitude;
+		long timeMillis;
+		while (true) {
+			long version = page.versions.get(i);
+			if ((version & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			latitude = page.latitudes[i];
+			longitude = page.longitudes[i];
+			timeMillis = page.times[i];
+			VarHandle.acquireFence();
+			if (page.versions.get(i) == version) {
+				break;
+			}
+		}
+		if (timeMillis != NO_POSITION) {
+			action.accept(page.userIds[i], latitude, longitude, timeMillis);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.openclassrooms.tourguide.user;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Registre concurrent des utilisateurs, découpé en shards selon le nom.
+ * Chaque shard associe une table de recherche par nom et un tableau des utilisateurs en ajout seul : les lectures sont
+ * sans verrou, les ajouts sont sérialisés shard par shard. Un index secondaire donne l'utilisateur par userId.
+ *
+ * view() renvoie une liste figée de tous les utilisateurs sans les recopier : elle ne retient que le tableau et la taille
+ * de chaque shard au moment de l'appel, les cases déjà publiées n'étant jamais modifiées.
+ */
+public class UserRegistry implements Iterable<User> {
+	public static final int DEFAULT_SHARDS = 64;
+
+	/**
+	 * Taille du registre et répartition des utilisateurs entre les shards.
+	 */
+	public record Stats(int shards, int users, int minShardSize, int maxShardSize) {
+	}
+
+	private static final class Shard {
+		final ConcurrentHashMap<String, User> byName = new ConcurrentHashMap<>();
+		volatile User[] users = new User[16];
+		volatile int size;
+
+		synchronized boolean add(User user) {
+			if (byName.putIfAbsent(user.getUserName(), user) != null) {
+				return false;
+			}
+			User[] current = users;
+			if (size == current.length) {
+				// Les vues existantes gardent l'ancien tableau, toujours valide jusqu'à leur taille
+				current = Arrays.copyOf(current, current.length * 2);
+				users = current;
+			}
+			current[size] = user;
+			// Publication : les lecteurs lisent size avant users
+			size = size + 1;
+			return true;
+		}
+	}
+
+	private final Shard[] shards;
+	private final int mask;
+	private final ConcurrentHashMap<UUID, User> byId = new ConcurrentHashMap<>();
+
+	public UserRegistry() {
+		this(DEFAULT_SHARDS);
+	}
+
+	/**
+	 * @param shards nombre de shards, arrondi à la puissance de deux supérieure
+	 */
+	public UserRegistry(int shards) {
+		if (shards <= 0) {
+			throw new IllegalArgumentException("shards must be positive: " + shards);
+		}
+		int count = Integer.highestOneBit(shards - 1) << 1;
+		this.shards = new Shard[Math.max(1, count)];
+		for (int i = 0; i < this.shards.length; i++) {
+			this.shards[i] = new Shard();
+		}
+		this.mask = this.shards.length - 1;
+	}
+
+	/**
+	 * Ajoute l'utilisateur si aucun utilisateur de même nom n'est enregistré.
+	 *
+	 * @return false si le nom était déjà pris
+	 */
+	public boolean add(User user) {
+		if (!shardFor(user.getUserName()).add(user)) {
+			return false;
+		}
+		byId.put(user.getUserId(), user);
+		return true;
+	}
+
+	public User getByName(String userName) {
+		return shardFor(userName).byName.get(userName);
+	}
+
+	public User getById(UUID userId) {
+		return byId.get(userId);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Shard shard : shards) {
+			size += shard.size;
+		}
+		return size;
+	}
+
+	/**
+	 * Liste non modifiable des utilisateurs enregistrés à l'instant de l'appel, sans copie des utilisateurs.
+	 * Accès indexé (RandomAccess) : subList permet de la découper en lots.
+	 */
+	public List<User> view() {
+		User[][] arrays = new User[shards.length][];
+		int[] offsets = new int[shards.length + 1];
+		for (int i = 0; i < shards.length; i++) {
+			int size = shards[i].size;
+			arrays[i] = shards[i].users;
+			offsets[i + 1] = offsets[i] + size;
+		}
+		return new View(arrays, offsets);
+	}
+
+	@Override
+	public Iterator<User> iterator() {
+		return view().iterator();
+	}
+
+	@Override
+	public Spliterator<User> spliterator() {
+		return view().spliterator();
+	}
+
+	@Override
+	public void forEach(Consumer<? super User> action) {
+		for (Shard shard : shards) {
+			int size = shard.size;
+			User[] users = shard.users;
+			for (int i = 0; i < size; i++) {
+				action.accept(users[i]);
+			}
+		}
+	}
+
+	public Stats getStats() {
+		int users = 0;
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		for (Shard shard : shards) {
+			int size = shard.size;
+			users += size;
+			min = Math.min(min, size);
+			max = Math.max(max, size);
+		}
+		return new Stats(shards.length, users, min, max);
+	}
+
+	private Shard shardFor(String userName) {
+		int hash = userName.hashCode();
+		return shards[(hash ^ (hash >>> 16)) & mask];
+	}
+
+	private static final class View extends AbstractList<User> implements RandomAccess {
+		private final User[][] arrays;
+		// offsets[i] : rang du premier utilisateur du shard i ; offsets[shards] : taille totale
+		private final int[] offsets;
+
+		View(User[][] arrays, int[] offsets) {
+			this.arrays = arrays;
+			this.offsets = offsets;
+		}
+
+		@Override
+		public User get(int index) {
+			Objects.checkIndex(index, size());
+			// Dernier shard qui commence avant index (les shards vides partagent l'offset du suivant)
+			int low = 0;
+			int high = arrays.length - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (offsets[middle] <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return arrays[low][index - offsets[low]];
+		}
+
+		@Override
+		public int size() {
+			return offsets[arrays.length];
+		}
+
+		@Override
+		public void forEach(Consumer<? super User> action) {
+			for (int shard = 0; shard < arrays.length; shard++) {
+				User[] users = arrays[shard];
+				int size = offsets[shard + 1] - offsets[shard];
+				for (int i = 0; i < size; i++) {
+					action.accept(users[i]);
+				}
+			}
+		}
+	}
+}
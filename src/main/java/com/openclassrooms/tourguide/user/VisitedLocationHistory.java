@@ -0,0 +1,188 @@
+package com.openclassrooms.tourguide.user;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * Historique des positions d'un utilisateur, stocké dans un buffer circulaire borné par la capacité.
+ * Le buffer démarre petit et double à la demande jusqu'à la capacité : un utilisateur qui n'a que quelques positions
+ * ne réserve pas la capacité entière. Au-delà de la capacité, la position la plus ancienne est écrasée ; avec une durée de rétention,
+ * les positions trop anciennes en tête d'historique sont aussi évincées à chaque ajout.
+ *
+ * Chaque position reçoit un numéro de séquence croissant (0 pour la première position ajoutée) :
+ * il reste valable même après éviction, ce qui permet aux traitements incrémentaux de reprendre là où ils s'étaient arrêtés.
+ * L'itération parcourt le buffer sans le copier ; elle est faiblement cohérente vis-à-vis des ajouts concurrents.
+ */
+public class VisitedLocationHistory extends AbstractList<VisitedLocation> {
+
+	/**
+	 * Politique de rétention : capacité maximale et, optionnellement, âge maximal d'une position.
+	 */
+	public record RetentionPolicy(int capacity, Duration maxAge) {
+		public static final RetentionPolicy DEFAULT = new RetentionPolicy(100, null);
+
+		public RetentionPolicy {
+			if (capacity <= 0) {
+				throw new IllegalArgumentException("capacity must be positive: " + capacity);
+			}
+		}
+	}
+
+	private static final int INITIAL_BUFFER_SIZE = 4;
+
+	private VisitedLocation[] buffer;
+	private final int capacity;
+	private final long maxAgeMillis;
+	// Séquence de la plus ancienne position conservée et séquence de la prochaine position ajoutée
+	private long first;
+	private long next;
+
+	public VisitedLocationHistory(RetentionPolicy policy) {
+		this.capacity = policy.capacity();
+		this.buffer = new VisitedLocation[Math.min(capacity, INITIAL_BUFFER_SIZE)];
+		this.maxAgeMillis = policy.maxAge() == null ? 0 : policy.maxAge().toMillis();
+	}
+
+	@Override
+	public synchronized boolean add(VisitedLocation visitedLocation) {
+		if (next - first == buffer.length) {
+			if (buffer.length < capacity) {
+				grow();
+			} else {
+				evictFirst();
+			}
+		}
+		buffer[slot(next++)] = visitedLocation;
+		if (maxAgeMillis > 0) {
+			long cutoff = System.currentTimeMillis() - maxAgeMillis;
+			while (first < next - 1 && buffer[slot(first)].timeVisited.getTime() < cutoff) {
+				evictFirst();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized VisitedLocation get(int index) {
+		if (index < 0 || index >= next - first) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (next - first));
+		}
+		return buffer[slot(first + index)];
+	}
+
+	@Override
+	public synchronized int size() {
+		return (int) (next - first);
+	}
+
+	@Override
+	public synchronized void clear() {
+		while (first < next) {
+			evictFirst();
+		}
+		first = 0;
+		next = 0;
+	}
+
+	/**
+	 * Dernière position ajoutée, ou null si l'historique est vide.
+	 */
+	public synchronized VisitedLocation getLast() {
+		return next == first ? null : buffer[slot(next - 1)];
+	}
+
+	/**
+	 * Nombre total de positions ajoutées depuis la création (ou le dernier clear), évincées comprises.
+	 */
+	public synchronized long getAppendedCount() {
+		return next;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Applique l'action aux positions conservées dont la séquence est dans [fromSequence, toSequence).
+	 * Les positions déjà évincées (capacité dépassée ou âge maximal atteint) sont sautées : elles sont comptées
+	 * dans la valeur de retour, pour que l'appelant sache qu'une partie de l'intervalle lui a échappé.
+	 *
+	 * @return le nombre de positions de l'intervalle évincées avant d'avoir pu être parcourues
+	 */
+	public long forEachBetween(long fromSequence, long toSequence, Consumer<VisitedLocation> action) {
+		long sequence = Math.max(0, fromSequence);
+		long evicted = 0;
+		while (true) {
+			VisitedLocation visitedLocation;
+			synchronized (this) {
+				if (sequence < first && sequence < toSequence) {
+					evicted += Math.min(first, toSequence) - sequence;
+				}
+				sequence = Math.max(sequence, first);
+				if (sequence >= Math.min(toSequence, next)) {
+					return evicted;
+				}
+				visitedLocation = buffer[slot(sequence++)];
+			}
+			action.accept(visitedLocation);
+		}
+	}
+
+	@Override
+	public Iterator<VisitedLocation> iterator() {
+		long end;
+		long start;
+		synchronized (this) {
+			start = first;
+			end = next;
+		}
+		return new Iterator<>() {
+			private long sequence = start;
+			private VisitedLocation nextLocation = advance();
+
+			private VisitedLocation advance() {
+				synchronized (VisitedLocationHistory.this) {
+					sequence = Math.max(sequence, first);
+					return sequence < Math.min(end, next) ? buffer[slot(sequence++)] : null;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nextLocation != null;
+			}
+
+			@Override
+			public VisitedLocation next() {
+				if (nextLocation == null) {
+					throw new NoSuchElementException();
+				}
+				VisitedLocation current = nextLocation;
+				nextLocation = advance();
+				return current;
+			}
+		};
+	}
+
+	// Les positions gardent leur séquence : seul leur emplacement change avec la taille du buffer
+	private void grow() {
+		VisitedLocation[] grown = new VisitedLocation[(int) Math.min(capacity, 2L * buffer.length)];
+		for (long sequence = first; sequence < next; sequence++) {
+			grown[(int) (sequence % grown.length)] = buffer[slot(sequence)];
+		}
+		buffer = grown;
+	}
+
+	private void evictFirst() {
+		buffer[slot(first++)] = null;
+	}
+
+	private int slot(long sequence) {
+		return (int) (sequence % buffer.length);
+	}
+}
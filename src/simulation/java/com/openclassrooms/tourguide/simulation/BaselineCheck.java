@@ -0,0 +1,76 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comparaison d'un rapport de simulation avec la référence : débit plus faible, percentiles ou pic mémoire plus
+ * élevés au-delà de la tolérance relative. Une hausse de latence inférieure à minLatencyDelta est ignorée, et un
+ * percentile n'est comparé que si au moins TAIL_SAMPLES appels le dépassent (p99 : 10 000 appels, p999 : 100 000) ;
+ * en deçà, il dépend de quelques appels seulement et figure dans le rapport sans être comparé.
+ */
+final class BaselineCheck {
+	private static final long TAIL_SAMPLES = 100;
+
+	private BaselineCheck() {
+	}
+
+	static List<String> regressions(SimulationReport baseline, SimulationReport report, double tolerance,
+			Duration minLatencyDelta) {
+		List<String> regressions = new ArrayList<>();
+		double minDeltaMillis = minLatencyDelta.toNanos() / 1_000_000.0;
+		for (SimulationReport.Scenario scenario : report.scenarios()) {
+			SimulationReport.Scenario reference = baseline.scenario(scenario.users());
+			if (reference == null) {
+				continue;
+			}
+			String prefix = scenario.users() + " users, ";
+			if (scenario.tracker() != null && reference.tracker() != null) {
+				checkThroughput(regressions, prefix + "tracker", scenario.tracker().usersPerSecond(),
+						reference.tracker().usersPerSecond(), tolerance);
+			}
+			for (Map.Entry<String, SimulationReport.Operation> entry : scenario.operations().entrySet()) {
+				SimulationReport.Operation expected = reference.operations().get(entry.getKey());
+				if (expected == null) {
+					continue;
+				}
+				SimulationReport.Operation actual = entry.getValue();
+				String operation = prefix + entry.getKey();
+				checkThroughput(regressions, operation, actual.throughputPerSecond(), expected.throughputPerSecond(),
+						tolerance);
+				long count = Math.min(actual.count(), expected.count());
+				checkLatency(regressions, operation + " p50", actual.p50Millis(), expected.p50Millis(), tolerance,
+						minDeltaMillis);
+				if (count / 100 >= TAIL_SAMPLES) {
+					checkLatency(regressions, operation + " p99", actual.p99Millis(), expected.p99Millis(), tolerance,
+							minDeltaMillis);
+				}
+				if (count / 1000 >= TAIL_SAMPLES) {
+					checkLatency(regressions, operation + " p999", actual.p999Millis(), expected.p999Millis(), tolerance,
+							minDeltaMillis);
+				}
+			}
+			if (scenario.heapPeakMb() > reference.heapPeakMb() * (1 + tolerance)) {
+				regressions.add(String.format("%sheap peak %d MB > baseline %d MB", prefix, scenario.heapPeakMb(),
+						reference.heapPeakMb()));
+			}
+		}
+		return regressions;
+	}
+
+	private static void checkThroughput(List<String> regressions, String name, double actual, double expected,
+			double tolerance) {
+		if (actual < expected * (1 - tolerance)) {
+			regressions.add(String.format("%s throughput %.0f/s < baseline %.0f/s", name, actual, expected));
+		}
+	}
+
+	private static void checkLatency(List<String> regressions, String name, double actual, double expected,
+			double tolerance, double minDeltaMillis) {
+		if (actual > expected * (1 + tolerance) && actual - expected > minDeltaMillis) {
+			regressions.add(String.format("%s %.2f ms > baseline %.2f ms", name, actual, expected));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Distribution de latence d'un service simulé, décrite par une chaîne :
+ * <ul>
+ * <li>none : aucune latence</li>
+ * <li>fixed:5ms</li>
+ * <li>uniform:5ms-20ms</li>
+ * <li>lognormal:5ms,0.5 (médiane, écart-type du logarithme)</li>
+ * </ul>
+ */
+public abstract class LatencyModel {
+
+	public static final LatencyModel NONE = new LatencyModel("none") {
+		@Override
+		public long sampleNanos(SplittableRandom random) {
+			return 0;
+		}
+	};
+
+	private final String spec;
+
+	private LatencyModel(String spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Tire une latence, en nanosecondes, avec le générateur donné.
+	 */
+	public abstract long sampleNanos(SplittableRandom random);
+
+	public static LatencyModel parse(String spec) {
+		String trimmed = spec.trim();
+		int colon = trimmed.indexOf(':');
+		String kind = colon < 0 ? trimmed : trimmed.substring(0, colon);
+		String arguments = colon < 0 ? "" : trimmed.substring(colon + 1);
+		switch (kind) {
+		case "none":
+			return NONE;
+		case "fixed": {
+			long nanos = nanos(arguments);
+			return new LatencyModel(trimmed) {
+				@Override
+				public long sampleNanos(SplittableRandom random) {
+					return nanos;
+				}
+			};
+		}
+		case "uniform": {
+			String[] bounds = arguments.split("-");
+			long min = nanos(bounds[0]);
+			long max = nanos(bounds[1]);
+			if (max < min) {
+				throw new IllegalArgumentException("Invalid latency range: " + spec);
+			}
+			return new LatencyModel(trimmed) {
+				@Override
+				public long sampleNanos(SplittableRandom random) {
+					return max == min ? min : random.nextLong(min, max + 1);
+				}
+			};
+		}
+		case "lognormal": {
+			String[] parameters = arguments.split(",");
+			double median = nanos(parameters[0]);
+			double sigma = Double.parseDouble(parameters[1].trim());
+			return new LatencyModel(trimmed) {
+				@Override
+				public long sampleNanos(SplittableRandom random) {
+					return (long) (median * Math.exp(sigma * random.nextGaussian()));
+				}
+			};
+		}
+		default:
+			throw new IllegalArgumentException("Unknown latency model: " + spec);
+		}
+	}
+
+	/**
+	 * Attend la latence tirée ; rend la main plus tôt si le thread est interrompu.
+	 */
+	public static void pause(long nanos) {
+		if (nanos <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static long nanos(String duration) {
+		Duration parsed = DurationStyle.detectAndParse(duration.trim());
+		return parsed.toNanos();
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
@@ -0,0 +1,50 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enregistre la durée de chaque appel d'une opération, pour en calculer les percentiles exacts.
+ * La capacité est fixée à la création : les enregistrements au-delà ne comptent que dans le nombre d'appels.
+ */
+class LatencyRecorder {
+	private final long[] samples;
+	private final AtomicInteger count = new AtomicInteger();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	LatencyRecorder(int capacity) {
+		this.samples = new long[capacity];
+	}
+
+	void record(long nanos) {
+		int index = count.getAndIncrement();
+		if (index < samples.length) {
+			samples[index] = nanos;
+		}
+	}
+
+	void recordError() {
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * À appeler une fois tous les appels terminés.
+	 */
+	SimulationReport.Operation toOperation(long elapsedNanos) {
+		int recorded = Math.min(count.get(), samples.length);
+		long[] sorted = Arrays.copyOf(samples, recorded);
+		Arrays.sort(sorted);
+		double throughput = elapsedNanos == 0 ? 0 : count.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		return new SimulationReport.Operation(count.get(), errors.get(), throughput, percentile(sorted, 0.5),
+				percentile(sorted, 0.99), percentile(sorted, 0.999));
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1_000_000.0;
+	}
+}
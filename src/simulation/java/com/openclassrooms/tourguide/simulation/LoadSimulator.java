@@ -0,0 +1,211 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.user.User;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Simulation de charge de TourGuideService et du Tracker, avec GpsUtil, RewardCentral et TripPricer remplacés
+ * par des simulations locales reproductibles (graine, latences, taux d'erreur, déplacements : simulation.properties).
+ *
+ * Pour chaque taille de population : chargement des utilisateurs, quelques cycles du Tracker, puis appels directs
+ * au service (trackUserLocation pour tous les utilisateurs, getNearbyAttractions et getTripDeals pour une fraction).
+ * Le rapport (débit, p50/p99/p999, mémoire) est comparé au fichier de référence ; une régression fait échouer
+ * le processus, et donc le build.
+ *
+ * mvn -Psimulation verify -DskipTests -Dsimulation.args="simulation.users=10000,100000,1000000"
+ */
+public class LoadSimulator {
+	private static final Logger logger = LoggerFactory.getLogger(LoadSimulator.class);
+	private static final long MB = 1024 * 1024;
+
+	private final SimulationConfig config;
+
+	public LoadSimulator(SimulationConfig config) {
+		this.config = config;
+	}
+
+	public static void main(String[] args) throws Exception {
+		SimulationConfig config = new SimulationConfig(args);
+		SimulationReport report = new LoadSimulator(config).run();
+		ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+		Files.createDirectories(config.getReportFile().toAbsolutePath().getParent());
+		mapper.writeValue(config.getReportFile().toFile(), report);
+		logger.info("Report written to " + config.getReportFile());
+
+		if (config.isBaselineUpdate()) {
+			mapper.writeValue(config.getBaselineFile().toFile(), report);
+			logger.info("Baseline updated: " + config.getBaselineFile());
+			System.exit(0);
+		}
+		if (!Files.exists(config.getBaselineFile())) {
+			logger.warn("No baseline at " + config.getBaselineFile() + ", nothing to compare");
+			System.exit(0);
+		}
+		SimulationReport baseline = mapper.readValue(config.getBaselineFile().toFile(), SimulationReport.class);
+		List<String> regressions = BaselineCheck.regressions(baseline, report, config.getBaselineTolerance(),
+				config.getBaselineMinLatencyDelta());
+		regressions.forEach(regression -> logger.error("Regression: " + regression));
+		if (regressions.isEmpty()) {
+			logger.info("No regression against " + config.getBaselineFile());
+		}
+		System.exit(!regressions.isEmpty() && config.isFailOnRegression() ? 1 : 0);
+	}
+
+	public SimulationReport run() throws InterruptedException {
+		logger.info("Simulation configuration: " + config);
+		if (config.getWarmupUsers() > 0) {
+			logger.info("Warmup with " + config.getWarmupUsers() + " users");
+			runScenario(config.getWarmupUsers());
+		}
+		List<SimulationReport.Scenario> scenarios = new ArrayList<>();
+		for (int users : config.getUserCounts()) {
+			scenarios.add(runScenario(users));
+		}
+		return new SimulationReport(config.getSeed(), config.toString(), scenarios);
+	}
+
+	private SimulationReport.Scenario runScenario(int userCount) throws InterruptedException {
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP)
+				.toList();
+		heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getBootstrap().setSeed(config.getSeed());
+		properties.getTracker().setPollingInterval(config.getTrackerPollingInterval());
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		SimulatedGpsUtil gpsUtil = new SimulatedGpsUtil(config);
+		RewardsService rewardsService = new RewardsService(gpsUtil, new SimulatedRewardCentral(config), properties,
+				registry);
+		InternalTestHelper.setInternalUserNumber(userCount);
+
+		long start = System.nanoTime();
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService,
+				new SimulatedTripPricer(config), properties, registry);
+		long bootstrapMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		long heapAfterBootstrapMb = usedHeapAfterGc() / MB;
+		logger.info(userCount + " users loaded in " + bootstrapMillis + " ms, heap " + heapAfterBootstrapMb + " MB");
+
+		SimulationReport.Tracker tracker = runTracker(tourGuideService.tracker, registry);
+		List<User> users = tourGuideService.getAllUsers();
+		Map<String, SimulationReport.Operation> operations = new LinkedHashMap<>();
+		operations.put("trackUserLocation",
+				runOperation(registry, users, user -> tourGuideService.trackUserLocation(user).join()));
+		operations.put("getNearbyAttractions",
+				runOperation(registry, sample(users, config.getNearbyAttractionsFraction()),
+						user -> tourGuideService.getNearByAttractions(tourGuideService.getUserLocation(user))));
+		operations.put("getTripDeals", runOperation(registry, sample(users, config.getTripDealsFraction()),
+				tourGuideService::getTripDeals));
+		rewardsService.getAttractionCatalog().stop();
+
+		long heapPeakMb = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum() / MB;
+		SimulationReport.Scenario scenario = new SimulationReport.Scenario(userCount, bootstrapMillis, tracker,
+				operations, heapAfterBootstrapMb, heapPeakMb);
+		logger.info(userCount + " users: " + scenario);
+		return scenario;
+	}
+
+	private SimulationReport.Tracker runTracker(Tracker tracker, SimpleMeterRegistry registry)
+			throws InterruptedException {
+		while (tracker.getCompletedCycles() < config.getTrackerCycles()) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+		tracker.stopTracking();
+		awaitPipelineIdle(registry);
+		Timer cycles = registry.get(TourGuideMetrics.TRACKER_CYCLE).timer();
+		double trackedUsers = registry.get(TourGuideMetrics.TRACKER_USERS).counter().count();
+		double seconds = cycles.totalTime(TimeUnit.SECONDS);
+		return new SimulationReport.Tracker(cycles.count(), cycles.mean(TimeUnit.MILLISECONDS),
+				cycles.max(TimeUnit.MILLISECONDS), seconds == 0 ? 0 : trackedUsers / seconds);
+	}
+
+	/**
+	 * Appelle l'opération pour chaque utilisateur, avec request-concurrency appels simultanés.
+	 */
+	private SimulationReport.Operation runOperation(MeterRegistry registry, List<User> users,
+			Consumer<User> operation)
+			throws InterruptedException {
+		LatencyRecorder recorder = new LatencyRecorder(users.size());
+		ExecutorService drivers = Executors.newFixedThreadPool(config.getRequestConcurrency());
+		long start = System.nanoTime();
+		for (User user : users) {
+			drivers.execute(() -> {
+				long callStart = System.nanoTime();
+				try {
+					operation.accept(user);
+					recorder.record(System.nanoTime() - callStart);
+				} catch (RuntimeException e) {
+					recorder.recordError();
+				}
+			});
+		}
+		drivers.shutdown();
+		drivers.awaitTermination(1, TimeUnit.HOURS);
+		SimulationReport.Operation result = recorder.toOperation(System.nanoTime() - start);
+		awaitPipelineIdle(registry);
+		return result;
+	}
+
+	/**
+	 * Attend que les files du pipeline de suivi soient vides, pour qu'une phase ne mesure pas la fin de la précédente.
+	 */
+	private static void awaitPipelineIdle(MeterRegistry registry) throws InterruptedException {
+		int idlePolls = 0;
+		while (idlePolls < 2) {
+			double depth = registry.find(TourGuideMetrics.PIPELINE_QUEUE_DEPTH).gauges().stream()
+					.mapToDouble(Gauge::value)
+					.sum();
+			idlePolls = depth == 0 ? idlePolls + 1 : 0;
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+	}
+
+	/**
+	 * Un utilisateur sur 1 / fraction, toujours les mêmes d'une exécution à l'autre.
+	 */
+	private static List<User> sample(List<User> users, double fraction) {
+		if (fraction <= 0) {
+			return List.of();
+		}
+		int step = Math.max(1, (int) Math.round(1 / fraction));
+		List<User> sample = new ArrayList<>(users.size() / step + 1);
+		for (int i = 0; i < users.size(); i += step) {
+			sample.add(users.get(i));
+		}
+		return sample;
+	}
+
+	private static long usedHeapAfterGc() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,60 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+
+/**
+ * Déplacement des utilisateurs simulés, d'une position à la suivante.
+ * Dans les deux modèles, un déplacement mène directement sur une attraction avec la probabilité attractionVisitRate.
+ */
+public enum MovementModel {
+	/**
+	 * Position tirée uniformément à chaque appel, comme le GpsUtil d'origine.
+	 */
+	RANDOM {
+		@Override
+		Location move(Location previous, SplittableRandom random, double stepMiles) {
+			return randomLocation(random);
+		}
+	},
+	/**
+	 * Marche aléatoire : pas de longueur au plus stepMiles dans une direction quelconque.
+	 */
+	RANDOM_WALK {
+		@Override
+		Location move(Location previous, SplittableRandom random, double stepMiles) {
+			if (previous == null) {
+				return randomLocation(random);
+			}
+			double bearing = random.nextDouble(2 * Math.PI);
+			double distance = random.nextDouble() * stepMiles;
+			double latitude = previous.latitude + distance / MILES_PER_DEGREE * Math.cos(bearing);
+			latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+			double longitude = previous.longitude
+					+ distance / (MILES_PER_DEGREE * Math.cos(Math.toRadians(latitude))) * Math.sin(bearing);
+			longitude = ((longitude + 540) % 360) - 180;
+			return new Location(latitude, longitude);
+		}
+	};
+
+	private static final double MILES_PER_DEGREE = 69.0;
+	private static final double MAX_LATITUDE = 85.05112878;
+
+	abstract Location move(Location previous, SplittableRandom random, double stepMiles);
+
+	public Location next(Location previous, SplittableRandom random, double stepMiles, double attractionVisitRate,
+			List<Attraction> attractions) {
+		if (!attractions.isEmpty() && random.nextDouble() < attractionVisitRate) {
+			Attraction attraction = attractions.get(random.nextInt(attractions.size()));
+			return new Location(attraction.latitude, attraction.longitude);
+		}
+		return move(previous, random, stepMiles);
+	}
+
+	private static Location randomLocation(SplittableRandom random) {
+		return new Location(random.nextDouble(-MAX_LATITUDE, MAX_LATITUDE), random.nextDouble(-180, 180));
+	}
+}
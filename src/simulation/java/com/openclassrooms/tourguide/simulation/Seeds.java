@@ -0,0 +1,29 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Générateurs dérivés de la graine de simulation et d'identifiants : un même appel (même utilisateur,
+ * même attraction...) obtient toujours le même tirage, quel que soit l'ordre d'exécution des threads.
+ */
+final class Seeds {
+
+	private Seeds() {
+	}
+
+	static SplittableRandom random(long seed, UUID id, long... values) {
+		long z = mix(seed ^ mix(id.getMostSignificantBits()) ^ id.getLeastSignificantBits());
+		for (long value : values) {
+			z = mix(z ^ value);
+		}
+		return new SplittableRandom(z);
+	}
+
+	// SplitMix64 : des entrées voisines donnent des graines indépendantes
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,74 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+
+/**
+ * GpsUtil simulé : latence, taux d'erreur et déplacements configurables.
+ * Chaque utilisateur a son propre générateur, dérivé de la graine : la suite de ses positions et des latences
+ * de ses appels est reproductible d'une exécution à l'autre.
+ */
+public class SimulatedGpsUtil extends GpsUtil {
+
+	private static final class UserState {
+		final SplittableRandom random;
+		Location location;
+
+		UserState(SplittableRandom random) {
+			this.random = random;
+		}
+	}
+
+	private final List<Attraction> attractions = super.getAttractions();
+	private final long seed;
+	private final LatencyModel latency;
+	private final double errorRate;
+	private final MovementModel movement;
+	private final double stepMiles;
+	private final double attractionVisitRate;
+	private final ConcurrentHashMap<UUID, UserState> users = new ConcurrentHashMap<>();
+
+	public SimulatedGpsUtil(SimulationConfig config) {
+		this.seed = config.getSeed();
+		this.latency = config.getGpsLatency();
+		this.errorRate = config.getGpsErrorRate();
+		this.movement = config.getMovementModel();
+		this.stepMiles = config.getStepMiles();
+		this.attractionVisitRate = config.getAttractionVisitRate();
+	}
+
+	@Override
+	public VisitedLocation getUserLocation(UUID userId) {
+		UserState state = users.computeIfAbsent(userId, id -> new UserState(Seeds.random(seed, id)));
+		long pause;
+		boolean failure;
+		Location location;
+		synchronized (state) {
+			pause = latency.sampleNanos(state.random);
+			failure = state.random.nextDouble() < errorRate;
+			location = movement.next(state.location, state.random, stepMiles, attractionVisitRate, attractions);
+			if (!failure) {
+				state.location = location;
+			}
+		}
+		LatencyModel.pause(pause);
+		if (failure) {
+			throw new IllegalStateException("Simulated GpsUtil failure");
+		}
+		return new VisitedLocation(userId, location, new Date());
+	}
+
+	@Override
+	public List<Attraction> getAttractions() {
+		return new ArrayList<>(attractions);
+	}
+}
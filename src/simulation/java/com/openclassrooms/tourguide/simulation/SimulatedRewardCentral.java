@@ -0,0 +1,33 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import rewardCentral.RewardCentral;
+
+/**
+ * RewardCentral simulé : les points, la latence et les échecs sont tirés d'un générateur dérivé de la graine,
+ * de l'attraction et de l'utilisateur.
+ */
+public class SimulatedRewardCentral extends RewardCentral {
+	private final long seed;
+	private final LatencyModel latency;
+	private final double errorRate;
+
+	public SimulatedRewardCentral(SimulationConfig config) {
+		this.seed = config.getSeed();
+		this.latency = config.getRewardCentralLatency();
+		this.errorRate = config.getRewardCentralErrorRate();
+	}
+
+	@Override
+	public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+		SplittableRandom random = Seeds.random(seed, attractionId, userId.getMostSignificantBits(),
+				userId.getLeastSignificantBits());
+		LatencyModel.pause(latency.sampleNanos(random));
+		if (random.nextDouble() < errorRate) {
+			throw new IllegalStateException("Simulated RewardCentral failure");
+		}
+		return random.nextInt(1, 1000);
+	}
+}
@@ -0,0 +1,44 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+import tripPricer.Provider;
+import tripPricer.TripPricer;
+
+/**
+ * TripPricer simulé : cinq offres par demande, tirées (avec la latence et les échecs) d'un générateur dérivé
+ * de la graine et des paramètres de la demande.
+ */
+public class SimulatedTripPricer extends TripPricer {
+	private static final int PROVIDERS = 5;
+
+	private final long seed;
+	private final LatencyModel latency;
+	private final double errorRate;
+
+	public SimulatedTripPricer(SimulationConfig config) {
+		this.seed = config.getSeed();
+		this.latency = config.getTripPricerLatency();
+		this.errorRate = config.getTripPricerErrorRate();
+	}
+
+	@Override
+	public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+			int rewardsPoints) {
+		SplittableRandom random = Seeds.random(seed, attractionId, adults, children, nightsStay, rewardsPoints);
+		LatencyModel.pause(latency.sampleNanos(random));
+		if (random.nextDouble() < errorRate) {
+			throw new IllegalStateException("Simulated TripPricer failure");
+		}
+		List<Provider> providers = new ArrayList<>(PROVIDERS);
+		for (int i = 0; i < PROVIDERS; i++) {
+			double price = Math.max(0, (adults + children / 2.0) * nightsStay * random.nextDouble(50, 500)
+					- rewardsPoints);
+			providers.add(new Provider(new UUID(random.nextLong(), random.nextLong()), "Provider " + i, price));
+		}
+		return providers;
+	}
+}
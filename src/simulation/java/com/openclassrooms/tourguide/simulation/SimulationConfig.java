@@ -0,0 +1,161 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Paramètres de la simulation : fichier simulation.properties du classpath, surchargé par les arguments
+ * de la ligne de commande sous la forme cle=valeur.
+ */
+public class SimulationConfig {
+	private final Properties properties = new Properties();
+
+	public SimulationConfig(String... overrides) {
+		try (InputStream in = SimulationConfig.class.getResourceAsStream("/simulation.properties")) {
+			if (in != null) {
+				properties.load(in);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (String override : overrides) {
+			int equals = override.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Expected key=value, got: " + override);
+			}
+			properties.setProperty(override.substring(0, equals).trim(), override.substring(equals + 1).trim());
+		}
+	}
+
+	public long getSeed() {
+		return Long.parseLong(get("simulation.seed", "42"));
+	}
+
+	/**
+	 * Tailles de population simulées successivement.
+	 */
+	public List<Integer> getUserCounts() {
+		return Arrays.stream(get("simulation.users", "10000").split(","))
+				.map(String::trim)
+				.map(Integer::valueOf)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Population d'un premier passage non mesuré (compilation JIT), 0 pour l'omettre.
+	 */
+	public int getWarmupUsers() {
+		return Integer.parseInt(get("simulation.warmup-users", "10000"));
+	}
+
+	public int getTrackerCycles() {
+		return Integer.parseInt(get("simulation.tracker-cycles", "3"));
+	}
+
+	public Duration getTrackerPollingInterval() {
+		return duration("simulation.tracker-polling-interval", "1s");
+	}
+
+	public int getRequestConcurrency() {
+		return Integer.parseInt(get("simulation.request-concurrency", "200"));
+	}
+
+	public double getTripDealsFraction() {
+		return Double.parseDouble(get("simulation.trip-deals-fraction", "0.1"));
+	}
+
+	public double getNearbyAttractionsFraction() {
+		return Double.parseDouble(get("simulation.nearby-attractions-fraction", "0.1"));
+	}
+
+	public LatencyModel getGpsLatency() {
+		return LatencyModel.parse(get("gps.latency", "none"));
+	}
+
+	public double getGpsErrorRate() {
+		return Double.parseDouble(get("gps.error-rate", "0"));
+	}
+
+	public MovementModel getMovementModel() {
+		return MovementModel.valueOf(get("gps.movement", "random-walk").toUpperCase().replace('-', '_'));
+	}
+
+	public double getStepMiles() {
+		return Double.parseDouble(get("gps.step-miles", "5"));
+	}
+
+	/**
+	 * Probabilité qu'un déplacement mène exactement sur une attraction (et donc à une récompense).
+	 */
+	public double getAttractionVisitRate() {
+		return Double.parseDouble(get("gps.attraction-visit-rate", "0.05"));
+	}
+
+	public LatencyModel getRewardCentralLatency() {
+		return LatencyModel.parse(get("reward-central.latency", "none"));
+	}
+
+	public double getRewardCentralErrorRate() {
+		return Double.parseDouble(get("reward-central.error-rate", "0"));
+	}
+
+	public LatencyModel getTripPricerLatency() {
+		return LatencyModel.parse(get("trip-pricer.latency", "none"));
+	}
+
+	public double getTripPricerErrorRate() {
+		return Double.parseDouble(get("trip-pricer.error-rate", "0"));
+	}
+
+	public Path getReportFile() {
+		return Path.of(get("report.file", "target/simulation-report.json"));
+	}
+
+	public Path getBaselineFile() {
+		return Path.of(get("baseline.file", "src/simulation/baseline.json"));
+	}
+
+	/**
+	 * Écart relatif toléré par rapport à la référence (débit, percentiles, mémoire).
+	 */
+	public double getBaselineTolerance() {
+		return Double.parseDouble(get("baseline.tolerance", "0.5"));
+	}
+
+	/**
+	 * Écart absolu de latence en deçà duquel une hausse n'est pas une régression (bruit de mesure).
+	 */
+	public Duration getBaselineMinLatencyDelta() {
+		return duration("baseline.min-latency-delta", "25ms");
+	}
+
+	public boolean isBaselineUpdate() {
+		return Boolean.parseBoolean(get("baseline.update", "false"));
+	}
+
+	public boolean isFailOnRegression() {
+		return Boolean.parseBoolean(get("baseline.fail-on-regression", "true"));
+	}
+
+	public String get(String key, String defaultValue) {
+		return properties.getProperty(key, defaultValue);
+	}
+
+	private Duration duration(String key, String defaultValue) {
+		return DurationStyle.detectAndParse(get(key, defaultValue));
+	}
+
+	@Override
+	public String toString() {
+		return properties.toString();
+	}
+}
@@ -0,0 +1,34 @@
+package com.openclassrooms.tourguide.simulation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Résultat d'une simulation, écrit en JSON ; le fichier de référence (baseline) a le même format.
+ */
+public record SimulationReport(long seed, String configuration, List<Scenario> scenarios) {
+
+	/**
+	 * Mesures pour une taille de population.
+	 */
+	public record Scenario(int users, long bootstrapMillis, Tracker tracker, Map<String, Operation> operations,
+			long heapAfterBootstrapMb, long heapPeakMb) {
+	}
+
+	/**
+	 * Cycles du Tracker : chaque cycle suit tous les utilisateurs.
+	 */
+	public record Tracker(long cycles, double meanCycleMillis, double maxCycleMillis, double usersPerSecond) {
+	}
+
+	/**
+	 * Appels d'une opération du service, lancés par le simulateur avec une concurrence fixe.
+	 */
+	public record Operation(long count, long errors, double throughputPerSecond, double p50Millis, double p99Millis,
+			double p999Millis) {
+	}
+
+	public Scenario scenario(int users) {
+		return scenarios.stream().filter(scenario -> scenario.users() == users).findFirst().orElse(null);
+	}
+}
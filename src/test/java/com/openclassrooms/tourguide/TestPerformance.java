@@ -1,22 +1,31 @@
 package com.openclassrooms.tourguide;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.time.StopWatch;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
 import gpsUtil.location.VisitedLocation;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.concurrent.TaskExecutors;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.gps.StaleVisitedLocation;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
@@ -63,13 +72,8 @@ public class TestPerformance {
 		StopWatch stopWatch = new StopWatch();
 		stopWatch.start();
 
-		// Collecte des futures
-		List<CompletableFuture<VisitedLocation>> futures = allUsers.stream()
-				.map(user -> tourGuideService.trackUserLocation(user))
-				.collect(Collectors.toList());
-
-		// Attendre que toutes les tâches soient terminées
-		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		// Suivi de tous les utilisateurs, au rythme de la cloison GpsUtil
+		trackAll(tourGuideService, allUsers, new TourGuideProperties().getGps().getMaxConcurrentCalls());
 
 		stopWatch.stop();
 		tourGuideService.tracker.stopTracking();
@@ -131,5 +135,49 @@ public class TestPerformance {
 		assertTrue(TimeUnit.MINUTES.toSeconds(20) >= elapsedSeconds);
 	}
 
+	/*
+	 * Même scénario que highVolumeTrackLocation dans chaque mode d'exécution, à 100 utilisateurs : ce test vérifie
+	 * que les deux modes fonctionnent, il ne fournit pas la comparaison. La comparaison à 100 000 utilisateurs
+	 * (InternalTestHelper) reste à faire sur un JDK 21+, voir le readme ; sur un JDK plus ancien, le mode VIRTUAL
+	 * retomberait sur les pools fixes et mesurerait deux fois le même mode, il est donc ignoré.
+	 */
+	@ParameterizedTest
+	@EnumSource(ExecutionMode.class)
+	public void highVolumeTrackLocationByExecutionMode(ExecutionMode mode) {
+		assumeTrue(mode != ExecutionMode.VIRTUAL || TaskExecutors.isVirtualThreadSupported());
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getExecution().setMode(mode);
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(100);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties);
+
+		List<User> allUsers = tourGuideService.getAllUsers();
+
+		StopWatch stopWatch = new StopWatch();
+		stopWatch.start();
+		trackAll(tourGuideService, allUsers, properties.getGps().getMaxConcurrentCalls());
+		stopWatch.stop();
+		tourGuideService.tracker.stopTracking();
+
+		System.out.println("highVolumeTrackLocation[" + mode + "]: " + allUsers.size() + " users, Time Elapsed: "
+				+ stopWatch.getTime() + " ms.");
+		assertTrue(TimeUnit.MINUTES.toSeconds(15) >= TimeUnit.MILLISECONDS.toSeconds(stopWatch.getTime()));
+	}
 
-}
\ No newline at end of file
+	/*
+	 * Suit tous les utilisateurs avec au plus maxInFlight suivis en cours, comme le Tracker : au-delà, les appels
+	 * attendraient une place dans la cloison GpsUtil jusqu'à leur échéance, puis échoueraient.
+	 * Chaque utilisateur doit avoir reçu une position fraîche, et non sa dernière position connue.
+	 */
+	private static void trackAll(TourGuideService tourGuideService, List<User> users, int maxInFlight) {
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		List<CompletableFuture<VisitedLocation>> futures = new ArrayList<>(users.size());
+		for (User user : users) {
+			inFlight.acquireUninterruptibly();
+			futures.add(tourGuideService.trackUserLocation(user).whenComplete((visitedLocation, e) -> inFlight.release()));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+		futures.forEach(future -> assertFalse(future.join() instanceof StaleVisitedLocation));
+	}
+}
@@ -1,19 +1,36 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import gpsUtil.GpsUtil;
 import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.attraction.AttractionIndex;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot;
+import com.openclassrooms.tourguide.attraction.AttractionSnapshot.GeoPoint;
+import com.openclassrooms.tourguide.attraction.BoundingBox;
+import com.openclassrooms.tourguide.cache.RewardPointsCache;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
@@ -47,6 +64,209 @@ public class TestRewardsService {
 		assertTrue(rewardsService.isWithinAttractionProximity(attraction, attraction));
 	}
 
+	@Test
+	public void attractionIndexMatchesBruteForce() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		List<Attraction> attractions = gpsUtil.getAttractions();
+		AttractionIndex index = new AttractionIndex(attractions);
+		Random random = new Random(42);
+
+		for (int radius : new int[] { 0, 10, 200, 5000 }) {
+			for (int n = 0; n < 2000; n++) {
+				// Une position sur deux est tirée autour d'une attraction pour tester les bords du rayon
+				Location location;
+				if (n % 2 == 0) {
+					Attraction attraction = attractions.get(random.nextInt(attractions.size()));
+					location = new Location(attraction.latitude + (random.nextDouble() - 0.5) * 0.5,
+							attraction.longitude + (random.nextDouble() - 0.5) * 0.5);
+				} else {
+					location = new Location(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+				}
+
+				Set<Integer> expected = new HashSet<>();
+				for (int i = 0; i < attractions.size(); i++) {
+					if (rewardsService.getDistance(attractions.get(i), location) <= radius) {
+						expected.add(i);
+					}
+				}
+				Set<Integer> actual = new HashSet<>();
+				index.forEachCandidate(location, radius, i -> {
+					if (rewardsService.getDistance(attractions.get(i), location) <= radius) {
+						actual.add(i);
+					}
+				});
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void attractionIndexWrapsAntimeridianWithNonDividingCellSize() {
+		// 360 / 0.7 n'est pas entier : la dernière colonne ne couvre que [179.8, 180[
+		List<Attraction> attractions = List.of(
+				new Attraction("west", "city", "state", 0, 179.5),
+				new Attraction("last column", "city", "state", 0, 179.9),
+				new Attraction("east", "city", "state", 0, -179.5));
+		AttractionIndex index = new AttractionIndex(attractions, 0.7);
+		RewardsService rewardsService = new RewardsService(new GpsUtil(), new RewardCentral());
+
+		for (Location location : List.of(new Location(0, -179.9), new Location(0, 179.9), new Location(0, 180),
+				new Location(0, -180))) {
+			Set<Integer> candidates = new HashSet<>();
+			index.forEachCandidate(location, 50, candidates::add);
+			for (int i = 0; i < attractions.size(); i++) {
+				if (rewardsService.getDistance(attractions.get(i), location) <= 50) {
+					assertTrue(candidates.contains(i), attractions.get(i).attractionName + " missed from " + location.longitude);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void boundingBoxFilterNeverChangesProximity() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		AttractionSnapshot snapshot = rewardsService.getAttractionCatalog().getSnapshot();
+		Random random = new Random(7);
+
+		for (int radius : new int[] { 0, 10, 200, 5000 }) {
+			for (int n = 0; n < 2000; n++) {
+				// Positions à environ un rayon d'une attraction, y compris près des pôles et de l'antiméridien
+				Location location;
+				if (n % 2 == 0) {
+					Attraction attraction = snapshot.get(random.nextInt(snapshot.size()));
+					double bearing = random.nextDouble() * 2 * Math.PI;
+					double degrees = radius / 69.0467670 * (0.98 + random.nextDouble() * 0.04);
+					double latitude = attraction.latitude + Math.cos(bearing) * degrees;
+					double longitude = attraction.longitude + Math.sin(bearing) * degrees;
+					// Au-delà d'un pôle, on ramène le point sur la sphère (même point, latitude valide)
+					if (Math.abs(latitude) > 90) {
+						latitude = Math.signum(latitude) * 180 - latitude;
+						longitude += 180;
+					}
+					location = new Location(latitude, longitude);
+				} else {
+					location = new Location(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+				}
+				GeoPoint point = GeoPoint.of(location);
+				BoundingBox box = BoundingBox.around(location, radius);
+				for (int i = 0; i < snapshot.size(); i++) {
+					Attraction attraction = snapshot.get(i);
+					boolean expected = rewardsService.getDistance(attraction, location) <= radius;
+					assertEquals(expected, snapshot.isWithin(i, point, box, radius));
+					assertEquals(rewardsService.getDistance(attraction, location) <= 200,
+							rewardsService.isWithinAttractionProximity(attraction, location));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void attractionSnapshotDistanceMatchesGetDistance() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		AttractionSnapshot snapshot = rewardsService.getAttractionCatalog().getSnapshot();
+		Random random = new Random(7);
+
+		for (int n = 0; n < 1000; n++) {
+			Location location = new Location(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+			for (int i = 0; i < snapshot.size(); i++) {
+				assertEquals(rewardsService.getDistance(snapshot.get(i), location), snapshot.getDistance(i, location));
+			}
+		}
+	}
+
+	@Test
+	public void rewardPointsAreCached() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = rewardsService.getAttractionCatalog().getAttractions().get(0);
+
+		int first = rewardsService.getRewardPoints(attraction, user);
+		int second = rewardsService.getRewardPoints(attraction, user);
+
+		assertEquals(first, second);
+		assertEquals(1, rewardsService.getRewardPointsCache().getStats().missCount());
+		assertEquals(1, rewardsService.getRewardPointsCache().getStats().hitCount());
+	}
+
+	@Test
+	public void slowRewardPointsLoadDoesNotBlockOtherKeys() throws Exception {
+		UUID slowAttraction = UUID.randomUUID();
+		CountDownLatch release = new CountDownLatch(1);
+		RewardCentral rewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				if (attractionId.equals(slowAttraction)) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return 1;
+				}
+				return 2;
+			}
+		};
+		RewardPointsCache cache = new RewardPointsCache(rewardCentral, 100, null, Executors.newFixedThreadPool(4),
+				new SimpleMeterRegistry());
+		UUID userId = UUID.randomUUID();
+
+		CompletableFuture<Integer> slow = cache.getRewardPointsAsync(slowAttraction, userId);
+		// Le chargement en cours ne bloque ni l'appelant ni les autres clés
+		assertEquals(2, cache.getRewardPointsAsync(UUID.randomUUID(), userId).get(5, TimeUnit.SECONDS));
+		assertFalse(slow.isDone());
+		release.countDown();
+		assertEquals(1, slow.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void incrementalRewardsOnlyEvaluateNewLocations() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = rewardsService.getAttractionCatalog().getAttractions().get(0);
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+
+		rewardsService.calculateRewardsAsync(user).join();
+		assertEquals(1, user.getUserRewards().size());
+		assertEquals(1, user.getRewardWatermark());
+
+		// Les positions déjà évaluées ne sont plus relues en mode incrémental...
+		user.clearUserRewards();
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date()));
+		rewardsService.calculateRewardsAsync(user).join();
+		assertEquals(0, user.getUserRewards().size());
+		assertEquals(2, user.getRewardWatermark());
+
+		// ...mais le sont en mode full rescan
+		rewardsService.calculateRewardsAsync(user, true).join();
+		assertEquals(1, user.getUserRewards().size());
+	}
+
+	@Test
+	public void concurrentRewardClaimsCallSupplierOnce() {
+		GpsUtil gpsUtil = new GpsUtil();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), attraction, new Date());
+		AtomicInteger calls = new AtomicInteger();
+
+		CompletableFuture<?>[] claims = IntStream.range(0, 50)
+				.mapToObj(i -> CompletableFuture.runAsync(() -> user.claimReward(attraction, () -> {
+					calls.incrementAndGet();
+					return new UserReward(visitedLocation, attraction, 10);
+				}).join()))
+				.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(claims).join();
+
+		assertEquals(1, calls.get());
+		assertEquals(1, user.getUserRewards().size());
+		assertTrue(user.hasReward(attraction.attractionName));
+	}
+
 	//
 	//@Disabled // Needs fixed - can throw ConcurrentModificationException
 	@Test
@@ -0,0 +1,109 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.user.User;
+
+public class TestTourGuideController {
+
+	@Test
+	public void exportLocationsStreamsOneLinePerUser() throws Exception {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(12.5, -3.25), new Date(1000)));
+		User withoutLocation = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		tourGuideService.addUser(user);
+		tourGuideService.addUser(withoutLocation);
+
+		TourGuideController controller = new TourGuideController();
+		controller.tourGuideService = tourGuideService;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		controller.exportLocations().getBody().writeTo(out);
+
+		String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(1, lines.length);
+		JsonNode line = new ObjectMapper().readTree(lines[0]);
+		assertEquals(user.getUserId().toString(), line.get("userId").asText());
+		assertEquals(12.5, line.get("lat").asDouble());
+		assertEquals(-3.25, line.get("lon").asDouble());
+		assertEquals(1000, line.get("timestamp").asLong());
+		assertTrue(out.toString(StandardCharsets.UTF_8).endsWith("\n"));
+	}
+
+	@Test
+	public void getLocationTracksUserWithoutHistory() {
+		TourGuideService tourGuideService = newTourGuideService();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+
+		TourGuideController controller = new TourGuideController();
+		controller.tourGuideService = tourGuideService;
+		VisitedLocation visitedLocation = controller.getLocation("jon").join();
+
+		assertEquals(user.getUserId(), visitedLocation.userId);
+	}
+
+	@Test
+	public void getNearbyAttractionsIsAsynchronousAndRejectsInvalidCount() throws Exception {
+		TourGuideService tourGuideService = newTourGuideService();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(33.8, -117.9), new Date()));
+		tourGuideService.addUser(user);
+		TourGuideController controller = new TourGuideController();
+		controller.tourGuideService = tourGuideService;
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+		MvcResult result = mockMvc.perform(get("/getNearbyAttractions").param("userName", "jon").param("k", "3"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(3));
+
+		MvcResult invalid = mockMvc.perform(get("/getNearbyAttractions").param("userName", "jon").param("k", "0"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(invalid))
+				.andExpect(status().isBadRequest());
+	}
+
+	private TourGuideService newTourGuideService() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+		return tourGuideService;
+	}
+}
@@ -1,22 +1,52 @@
 package com.openclassrooms.tourguide;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.openclassrooms.tourguide.dto.NearbyAttractionDTO;
+import com.openclassrooms.tourguide.dto.UserLocationDTO;
+import com.openclassrooms.tourguide.gps.GpsBulkheadFullException;
+import com.openclassrooms.tourguide.gps.GpsLocationClient;
+import com.openclassrooms.tourguide.gps.StaleVisitedLocation;
 import org.junit.jupiter.api.Test;
 
 import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
 import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.cache.TripDealsCache;
+import com.openclassrooms.tourguide.concurrent.CircuitBreaker;
+import com.openclassrooms.tourguide.concurrent.ExecutionMode;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
 import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.pipeline.PipelineStage;
 import com.openclassrooms.tourguide.service.RewardsService;
 import com.openclassrooms.tourguide.service.TourGuideService;
 import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserPositionStore;
+import com.openclassrooms.tourguide.user.UserReward;
 import tripPricer.Provider;
+import tripPricer.TripPricer;
 
 public class TestTourGuideService {
 
@@ -91,6 +121,299 @@ public class TestTourGuideService {
 		assertEquals(user.getUserId(), visitedLocation.userId);
 	}
 
+	@Test
+	public void trackUserUpdatesPositionStore() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.addUser(user);
+		VisitedLocation visitedLocation = tourGuideService.trackUserLocation(user).join();
+
+		UserPositionStore positionStore = tourGuideService.getPositionStore();
+		VisitedLocation stored = positionStore.get(user.getUserId());
+		assertEquals(visitedLocation.location.latitude, stored.location.latitude);
+		assertEquals(visitedLocation.location.longitude, stored.location.longitude);
+		assertEquals(visitedLocation.timeVisited, stored.timeVisited);
+
+		// Une position plus ancienne arrivée en retard ne remplace pas la dernière connue
+		positionStore.update(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date(0)));
+		assertEquals(visitedLocation.timeVisited, positionStore.get(user.getUserId()).timeVisited);
+		assertEquals(1, positionStore.size());
+		assertEquals(visitedLocation.timeVisited.getTime(), positionStore.getTimeMillis(user.getUserId()));
+		assertEquals(Long.MIN_VALUE, positionStore.getTimeMillis(UUID.randomUUID()));
+
+		// La dernière position servie par le service est lue dans le magasin
+		long later = visitedLocation.timeVisited.getTime() + 1000;
+		positionStore.update(new VisitedLocation(user.getUserId(), new Location(1, 2), new Date(later)));
+		VisitedLocation current = tourGuideService.getUserLocation(user);
+		assertEquals(1, current.location.latitude);
+		assertEquals(later, current.timeVisited.getTime());
+	}
+
+	@Test
+	public void trackUserFallsBackToLastKnownLocationWhenGpsIsSlow() {
+		AtomicInteger gpsCalls = new AtomicInteger();
+		GpsUtil slowGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				gpsCalls.incrementAndGet();
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new VisitedLocation(userId, new Location(1, 1), new Date());
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getGps().setTimeout(Duration.ofMillis(100));
+		properties.getGps().setFailureThreshold(2);
+		properties.getGps().setOpenDuration(Duration.ofMinutes(1));
+		RewardsService rewardsService = new RewardsService(slowGpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(slowGpsUtil, rewardsService, properties,
+				new SimpleMeterRegistry());
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		VisitedLocation last = new VisitedLocation(user.getUserId(), new Location(33.8, -117.9), new Date());
+		user.addToVisitedLocations(last);
+
+		// Deux dépassements d'échéance ouvrent le disjoncteur ; l'appel suivant n'atteint plus GpsUtil
+		for (int i = 0; i < 3; i++) {
+			VisitedLocation visitedLocation = tourGuideService.trackUserLocation(user).join();
+			assertTrue(visitedLocation instanceof StaleVisitedLocation);
+			assertEquals(last.location, visitedLocation.location);
+		}
+		assertEquals(2, gpsCalls.get());
+		assertEquals(CircuitBreaker.State.OPEN, tourGuideService.getGpsLocationClient().getCircuitBreaker().getState());
+		assertEquals(1, user.getVisitedLocations().size());
+
+		// Sans position connue, l'échec est propagé
+		User newUser = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		assertTrue(tourGuideService.trackUserLocation(newUser).handle((v, e) -> e != null).join());
+	}
+
+	@Test
+	public void fullGpsBulkheadRejectsWithoutOpeningCircuit() {
+		CountDownLatch release = new CountDownLatch(1);
+		GpsUtil blockingGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new VisitedLocation(userId, new Location(1, 1), new Date());
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getGps().setMaxConcurrentCalls(1);
+		properties.getGps().setFailureThreshold(2);
+		properties.getGps().setTimeout(Duration.ofMillis(300));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		GpsLocationClient client = new GpsLocationClient(blockingGpsUtil, properties.getGps(),
+				properties.getExecution().getMode(), registry);
+
+		// Le second appel attend une place jusqu'à son échéance, puis échoue sans compter pour le disjoncteur :
+		// seul le dépassement d'échéance du premier est un échec de GpsUtil
+		CompletableFuture<VisitedLocation> first = client.getUserLocation(UUID.randomUUID());
+		Throwable rejected = client.getUserLocation(UUID.randomUUID()).handle((v, e) -> e).join();
+		Throwable timedOut = first.handle((v, e) -> e).join();
+		release.countDown();
+
+		assertTrue(rejected instanceof GpsBulkheadFullException, String.valueOf(rejected));
+		assertTrue(timedOut instanceof TimeoutException, String.valueOf(timedOut));
+		assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker().getState());
+		assertEquals(1, registry.counter(TourGuideMetrics.GPS_FAILURES, "reason", "bulkhead").count());
+		assertEquals(1, registry.counter(TourGuideMetrics.GPS_FAILURES, "reason", "timeout").count());
+	}
+
+	@Test
+	public void floodedGpsBulkheadWaitsForSlotsInsteadOfReturningStaleLocations() {
+		GpsUtil slowGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new VisitedLocation(userId, new Location(1, 1), new Date());
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getGps().setMaxConcurrentCalls(5);
+		properties.getGps().setTimeout(Duration.ofSeconds(1));
+		// Les dépassements d'échéance de fin de lot ne doivent pas ouvrir le disjoncteur
+		properties.getGps().setFailureThreshold(1000);
+		RewardsService rewardsService = new RewardsService(slowGpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(0);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TourGuideService tourGuideService = new TourGuideService(slowGpsUtil, rewardsService, properties, registry);
+		tourGuideService.tracker.stopTracking();
+
+		// 20 appels de 100 ms sur 5 places : tous passent avant l'échéance d'une seconde, aucun n'est remplacé
+		// par la dernière position connue
+		List<CompletableFuture<VisitedLocation>> tracked = IntStream.range(0, 20)
+				.mapToObj(i -> tourGuideService.trackUserLocation(userWithLastLocation(i)))
+				.collect(Collectors.toList());
+		tracked.forEach(future -> assertTrue(!(future.join() instanceof StaleVisitedLocation)));
+
+		// Au-delà de ce que la cloison écoule avant l'échéance, les appels échouent au lieu de renvoyer une position ancienne ;
+		// seuls les appels commencés trop près de leur échéance la dépassent et se replient
+		List<CompletableFuture<VisitedLocation>> flooded = IntStream.range(0, 200)
+				.mapToObj(i -> tourGuideService.trackUserLocation(userWithLastLocation(i)))
+				.collect(Collectors.toList());
+		int rejected = 0;
+		int stale = 0;
+		for (CompletableFuture<VisitedLocation> future : flooded) {
+			VisitedLocation visitedLocation = future.handle((v, e) -> v).join();
+			Throwable error = future.handle((v, e) -> e).join();
+			if (visitedLocation instanceof StaleVisitedLocation) {
+				stale++;
+			} else if (error != null && error.getCause() instanceof GpsBulkheadFullException) {
+				rejected++;
+			}
+		}
+		assertTrue(rejected >= 100, rejected + " calls rejected by the bulkhead");
+		assertEquals(rejected, registry.counter(TourGuideMetrics.GPS_FAILURES, "reason", "bulkhead").count());
+		assertEquals(stale, registry.counter(TourGuideMetrics.GPS_FAILURES, "reason", "timeout").count());
+		assertEquals(stale, registry.counter(TourGuideMetrics.GPS_FALLBACKS).count());
+		tourGuideService.close();
+	}
+
+	private static User userWithLastLocation(int i) {
+		User user = new User(UUID.randomUUID(), "jon" + i, "000", "jon" + i + "@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(33.8, -117.9), new Date()));
+		return user;
+	}
+
+	@Test
+	public void timedOutGpsCallIsInterruptedAndFreesItsBulkheadSlot() {
+		AtomicInteger gpsCalls = new AtomicInteger();
+		GpsUtil hangingGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				if (gpsCalls.incrementAndGet() == 1) {
+					try {
+						Thread.sleep(60_000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new VisitedLocation(userId, new Location(1, 1), new Date());
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getGps().setMaxConcurrentCalls(1);
+		properties.getGps().setTimeout(Duration.ofMillis(100));
+		GpsLocationClient client = new GpsLocationClient(hangingGpsUtil, properties.getGps(),
+				properties.getExecution().getMode(), new SimpleMeterRegistry());
+
+		Throwable timedOut = client.getUserLocation(UUID.randomUUID()).handle((v, e) -> e).join();
+		assertTrue(timedOut instanceof TimeoutException, String.valueOf(timedOut));
+
+		// L'appel interrompu rend sa place : un nouvel appel passe sans attendre la fin du premier
+		long deadline = System.currentTimeMillis() + 5000;
+		VisitedLocation next = null;
+		while (next == null && System.currentTimeMillis() < deadline) {
+			next = client.getUserLocation(UUID.randomUUID()).handle((v, e) -> v).join();
+		}
+		assertTrue(next != null);
+		assertEquals(2, gpsCalls.get());
+	}
+
+	@Test
+	public void concurrentTrackingOfSameUserSharesOneGpsCall() {
+		AtomicInteger gpsCalls = new AtomicInteger();
+		GpsUtil slowGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				gpsCalls.incrementAndGet();
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new VisitedLocation(userId, new Location(1, 1), new Date());
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTracking().setReuseMaxAge(Duration.ofMinutes(1));
+		RewardsService rewardsService = new RewardsService(slowGpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(slowGpsUtil, rewardsService, properties,
+				new SimpleMeterRegistry());
+		tourGuideService.tracker.stopTracking();
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		List<CompletableFuture<VisitedLocation>> futures = IntStream.range(0, 10)
+				.mapToObj(i -> tourGuideService.trackUserLocation(user))
+				.collect(Collectors.toList());
+		VisitedLocation visitedLocation = futures.get(0).join();
+		futures.forEach(future -> assertSame(visitedLocation, future.join()));
+		assertEquals(1, gpsCalls.get());
+		assertEquals(1, user.getVisitedLocations().size());
+
+		// Position encore fraîche : réutilisée sans rappeler GpsUtil
+		assertSame(visitedLocation, tourGuideService.trackUserLocation(user).join());
+		assertEquals(1, gpsCalls.get());
+	}
+
+	@Test
+	public void trackUserRecordsExternalCallMetrics() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TourGuideProperties properties = new TourGuideProperties();
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties, registry);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties, registry);
+
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		tourGuideService.trackUserLocation(user).join();
+
+		tourGuideService.tracker.stopTracking();
+
+		Timer timer = registry.get(TourGuideMetrics.EXTERNAL_CALL)
+				.tag("service", "gpsUtil").tag("operation", "getUserLocation").timer();
+		assertEquals(1, timer.count());
+		assertTrue(registry.find("executor.active").tag("name", "tripDeals").gauge() != null);
+	}
+
+	@Test
+	public void getUserLocations() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		// Le Tracker ne doit pas rafraîchir les positions pendant le test
+		tourGuideService.tracker.stopTracking();
+
+		User fresh = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		fresh.addToVisitedLocations(new VisitedLocation(fresh.getUserId(), new Location(1, 2), new Date()));
+		User stale = new User(UUID.randomUUID(), "jon2", "000", "jon2@tourGuide.com");
+		stale.addToVisitedLocations(new VisitedLocation(stale.getUserId(), new Location(3, 4), new Date(0)));
+		tourGuideService.addUser(fresh);
+		tourGuideService.addUser(stale);
+
+		List<UserLocationDTO> locations = tourGuideService.getUserLocations(
+				List.of("jon", stale.getUserId().toString(), "unknown"));
+
+		assertEquals(3, locations.size());
+		assertEquals(UserLocationDTO.Status.CACHED, locations.get(0).getStatus());
+		assertEquals(1, locations.get(0).getLocation().latitude);
+		assertEquals(UserLocationDTO.Status.TRACKED, locations.get(1).getStatus());
+		assertEquals(stale.getUserId(), locations.get(1).getUserId());
+		assertEquals(stale.getLastVisitedLocation().timeVisited, locations.get(1).getTimeVisited());
+		assertEquals(UserLocationDTO.Status.NOT_FOUND, locations.get(2).getStatus());
+	}
+
 	@Test
 	public void getNearbyAttractions() {
 		GpsUtil gpsUtil = new GpsUtil();
@@ -108,6 +431,125 @@ public class TestTourGuideService {
 		assertEquals(5, attractions.size());
 	}
 
+	@Test
+	public void getNearbyAttractionsSelectsClosestInOrder() {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService);
+		tourGuideService.tracker.stopTracking();
+
+		VisitedLocation visitedLocation = new VisitedLocation(UUID.randomUUID(), new Location(40.0, -100.0), new Date());
+		List<NearbyAttractionDTO> attractions = tourGuideService.getNearByAttractions(visitedLocation, 10);
+
+		List<String> expected = rewardsService.getAttractionCatalog().getAttractions().stream()
+				.sorted(Comparator.comparingDouble(a -> rewardsService.getDistance(a, visitedLocation.location)))
+				.limit(10)
+				.map(a -> a.attractionName)
+				.collect(Collectors.toList());
+		assertEquals(expected, attractions.stream().map(NearbyAttractionDTO::getAttractionName).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void getNearbyAttractionsReturnsWithinDeadline() {
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 1;
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getNearbyAttractions().setDeadline(Duration.ofMillis(200));
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, slowRewardCentral, properties);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties);
+		tourGuideService.tracker.stopTracking();
+
+		VisitedLocation visitedLocation = new VisitedLocation(UUID.randomUUID(), new Location(40.0, -100.0), new Date());
+		long start = System.nanoTime();
+		List<NearbyAttractionDTO> attractions = tourGuideService.getNearByAttractions(visitedLocation);
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(5, attractions.size());
+		assertTrue(elapsedMillis < 1500, "took " + elapsedMillis + " ms");
+		assertTrue(attractions.stream().allMatch(a -> a.getRewardPoints() == null));
+	}
+
+	@Test
+	public void getNearbyAttractionsDoesNotQueueBehindTripDealsExecutor() {
+		CountDownLatch release = new CountDownLatch(1);
+		TripPricer blockingTripPricer = new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return List.of();
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTripDeals().setConcurrency(1);
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, blockingTripPricer, properties,
+				new SimpleMeterRegistry());
+		tourGuideService.tracker.stopTracking();
+
+		// L'unique thread de l'exécuteur des offres reste occupé
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		CompletableFuture<List<Provider>> tripDeals = tourGuideService.getTripDealsAsync(user);
+		try {
+			VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(40.0, -100.0), new Date());
+			List<NearbyAttractionDTO> attractions = tourGuideService.getNearByAttractions(visitedLocation);
+
+			assertEquals(5, attractions.size());
+			assertTrue(attractions.stream().allMatch(a -> a.getRewardPoints() != null));
+		} finally {
+			release.countDown();
+		}
+		tripDeals.join();
+	}
+
+	@Test
+	public void tripDealsAreCachedUntilRewardPointsChange() {
+		AtomicInteger calls = new AtomicInteger();
+		TripPricer tripPricer = new TripPricer() {
+			@Override
+			public List<Provider> getPrice(String apiKey, UUID attractionId, int adults, int children, int nightsStay,
+					int rewardsPoints) {
+				calls.incrementAndGet();
+				return List.of(new Provider(UUID.randomUUID(), "provider" + rewardsPoints, 100));
+			}
+		};
+		TripDealsCache cache = new TripDealsCache(tripPricer, "test-server-api-key", 100, Duration.ofMinutes(1),
+				Runnable::run, new SimpleMeterRegistry());
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		List<Provider> first = cache.getTripDeals(user).join();
+		assertSame(first, cache.getTripDeals(user).join());
+		assertEquals(1, calls.get());
+
+		// Une nouvelle récompense change le total de points : les offres sont recalculées et enregistrées sur l'utilisateur
+		Attraction attraction = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+		user.addUserReward(new UserReward(new VisitedLocation(user.getUserId(), new Location(0, 0), new Date()),
+				attraction, 50));
+		cache.refresh(user);
+		assertEquals(2, calls.get());
+		assertEquals("provider50", user.getTripDeals().get(0).name);
+		assertSame(user.getTripDeals(), cache.getTripDeals(user).join());
+		assertEquals(2, calls.get());
+	}
+
 	public void getTripDeals() {
 		GpsUtil gpsUtil = new GpsUtil();
 		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
@@ -122,4 +564,186 @@ public class TestTourGuideService {
 
 		assertEquals(10, providers.size());
 	}
+
+	@Test
+	public void trackingDoesNotWaitForSlowRewardCentral() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		GpsUtil atAttractionGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				return new VisitedLocation(userId, new Location(attraction.latitude, attraction.longitude), new Date());
+			}
+		};
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TourGuideProperties properties = new TourGuideProperties();
+		RewardsService rewardsService = new RewardsService(atAttractionGpsUtil, slowRewardCentral, properties, registry);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(atAttractionGpsUtil, rewardsService, properties,
+				registry);
+		tourGuideService.tracker.stopTracking();
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		// La position est enregistrée sans attendre RewardCentral
+		long start = System.nanoTime();
+		tourGuideService.ingestUserLocation(user).join();
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+		assertEquals(1, user.getVisitedLocations().size());
+
+		// Le suivi complet se termine avec la récompense attribuée
+		tourGuideService.trackUserLocation(user).join();
+		assertTrue(user.getUserRewards().stream().anyMatch(reward -> reward.getRewardPoints() == 42
+				&& reward.attraction.attractionName.equals(attraction.attractionName)));
+		for (String stage : new String[] { "ingest", "proximity", "points", "grant" }) {
+			assertTrue(registry.get(TourGuideMetrics.PIPELINE_STAGE).tag("stage", stage).timer().count() > 0);
+			assertTrue(registry.get(TourGuideMetrics.PIPELINE_QUEUE_DEPTH).tag("stage", stage).gauge() != null);
+		}
+	}
+
+	@Test
+	public void saturatedProximityStageFailsRewardEvaluation() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		GpsUtil atAttractionGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				return new VisitedLocation(userId, new Location(attraction.latitude, attraction.longitude), new Date());
+			}
+		};
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		// Une seule récompense à la fois en attente de ses points, une seule place dans la file de proximité
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getPipeline().setProximity(new TourGuideProperties.Pipeline.Stage(1, 1));
+		properties.getPipeline().setPointsInFlight(1);
+		properties.getPipeline().setHandoffTimeout(Duration.ofMillis(200));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		RewardsService rewardsService = new RewardsService(atAttractionGpsUtil, slowRewardCentral, properties, registry);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(atAttractionGpsUtil, rewardsService, properties,
+				registry);
+		tourGuideService.tracker.stopTracking();
+		List<User> users = IntStream.range(0, 6)
+				.mapToObj(i -> new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"))
+				.collect(Collectors.toList());
+
+		List<CompletableFuture<VisitedLocation>> tracked = users.stream().map(tourGuideService::trackUserLocation)
+				.collect(Collectors.toList());
+		CompletableFuture.allOf(tracked.toArray(new CompletableFuture[0])).handle((ignored, error) -> null).join();
+
+		// Toutes les positions sont enregistrées ; celles qui n'ont pas trouvé de place à temps échouent au lieu
+		// de se terminer sans récompense, et leur watermark reste en arrière
+		long failed = tracked.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+		assertTrue(failed > 0);
+		assertEquals(failed, (long) registry.get(TourGuideMetrics.PIPELINE_DEFERRED).counter().count());
+		for (int i = 0; i < users.size(); i++) {
+			User user = users.get(i);
+			assertEquals(1, user.getVisitedLocations().size());
+			boolean deferred = tracked.get(i).isCompletedExceptionally();
+			assertEquals(deferred, user.getRewardWatermark() == 0);
+			assertEquals(deferred, user.getUserRewards().isEmpty());
+		}
+		tourGuideService.close();
+	}
+
+	@Test
+	public void pipelineStageFailsItemsDroppedAtShutdown() {
+		CountDownLatch never = new CountDownLatch(1);
+		PipelineStage<CompletableFuture<Void>> stage = new PipelineStage<>("test", ExecutionMode.PLATFORM,
+				new TourGuideProperties.Pipeline.Stage(1, 10), item -> {
+					try {
+						never.await();
+					} catch (InterruptedException e) {
+						item.completeExceptionally(e);
+					}
+				}, (item, error) -> item.completeExceptionally(error), new SimpleMeterRegistry());
+		List<CompletableFuture<Void>> items = IntStream.range(0, 3).mapToObj(i -> new CompletableFuture<Void>())
+				.collect(Collectors.toList());
+		items.forEach(item -> {
+			try {
+				stage.put(item);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		stage.close(Duration.ofMillis(100));
+
+		// L'élément en cours est interrompu, ceux restés en file échouent au lieu de rester en attente
+		CompletableFuture.allOf(items.toArray(new CompletableFuture[0])).handle((ignored, error) -> null)
+				.orTimeout(5, TimeUnit.SECONDS).join();
+		assertTrue(items.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+		assertEquals(2, items.stream()
+				.filter(item -> item.handle((ignored, error) -> error instanceof RejectedExecutionException).join())
+				.count());
+	}
+
+	@Test
+	public void getUserLocationsDoesNotWaitForRewards() {
+		GpsUtil gpsUtil = new GpsUtil();
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		UUID unreachable = UUID.randomUUID();
+		GpsUtil atAttractionGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				if (userId.equals(unreachable)) {
+					try {
+						Thread.sleep(3000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new VisitedLocation(userId, new Location(attraction.latitude, attraction.longitude), new Date());
+			}
+		};
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					Thread.sleep(3000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 42;
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getBatchLocation().setDeadline(Duration.ofSeconds(1));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		RewardsService rewardsService = new RewardsService(atAttractionGpsUtil, slowRewardCentral, properties, registry);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(atAttractionGpsUtil, rewardsService, properties,
+				registry);
+		tourGuideService.tracker.stopTracking();
+		tourGuideService.addUser(new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com"));
+		tourGuideService.addUser(new User(unreachable, "jon2", "000", "jon2@tourGuide.com"));
+
+		List<UserLocationDTO> locations = tourGuideService.getUserLocations(List.of("jon", "jon2"));
+
+		// La position à portée d'une attraction est renvoyée sans attendre RewardCentral
+		assertEquals(UserLocationDTO.Status.TRACKED, locations.get(0).getStatus());
+		// Pas de réponse de GpsUtil avant l'échéance et aucune position connue
+		assertEquals(UserLocationDTO.Status.UNAVAILABLE, locations.get(1).getStatus());
+		assertNull(locations.get(1).getLocation());
+	}
 }
@@ -0,0 +1,162 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.metrics.TourGuideMetrics;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.tracker.AdaptiveTrackingPolicy;
+import com.openclassrooms.tourguide.tracker.Tracker;
+import com.openclassrooms.tourguide.user.User;
+
+public class TestTracker {
+
+	@Test
+	public void trackerWaitsForCycleCompletion() throws InterruptedException {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTracker().setShards(3);
+		properties.getTracker().setMaxInFlight(4);
+		properties.getTracker().setPollingInterval(Duration.ofMinutes(5));
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties);
+		InternalTestHelper.setInternalUserNumber(10);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties);
+		Tracker tracker = tourGuideService.tracker;
+
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (tracker.getCompletedCycles() == 0 && System.currentTimeMillis() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(50);
+		}
+		tracker.stopTracking();
+
+		assertEquals(1, tracker.getCompletedCycles());
+		assertEquals(10, tracker.getLastCycleUsers());
+		assertEquals(0, tracker.getLastCycleFailures());
+		assertTrue(tracker.getLastCycleDurationMillis() > 0);
+		// Le cycle n'est compté qu'une fois tous les suivis terminés : chaque utilisateur a une position de plus
+		for (User user : tourGuideService.getAllUsers()) {
+			assertEquals(4, user.getVisitedLocations().size());
+		}
+	}
+
+	@Test
+	public void adaptivePolicyFollowsSpeedAndAttractions() {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTracker().setPollingInterval(Duration.ofMinutes(5));
+		properties.getTracker().getAdaptive().setMaxInterval(Duration.ofHours(1));
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties);
+		AdaptiveTrackingPolicy policy = new AdaptiveTrackingPolicy(rewardsService, properties.getTracker());
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		long now = System.currentTimeMillis();
+
+		// Immobile au milieu du Pacifique : suivi à l'intervalle maximal
+		User stationary = userAt(now, new Location(0, -150), new Location(0, -150), new Location(0, -150));
+		assertEquals(TimeUnit.HOURS.toMillis(1), policy.nextIntervalMillis(stationary));
+
+		// Immobile à portée d'une attraction : suivi à chaque cycle
+		Location atAttraction = new Location(attraction.latitude, attraction.longitude);
+		User nearAttraction = userAt(now, atAttraction, atAttraction, atAttraction);
+		assertEquals(TimeUnit.MINUTES.toMillis(5), policy.nextIntervalMillis(nearAttraction));
+
+		// Une dizaine de miles toutes les cinq minutes, loin de toute attraction : suivi à chaque cycle
+		User moving = userAt(now, new Location(0, -150), new Location(0, -149.85), new Location(0, -149.7));
+		assertEquals(TimeUnit.MINUTES.toMillis(5), policy.nextIntervalMillis(moving));
+
+		// Sans historique suffisant : suivi à chaque cycle
+		User unknown = userAt(now, new Location(0, -150));
+		assertEquals(TimeUnit.MINUTES.toMillis(5), policy.nextIntervalMillis(unknown));
+	}
+
+	@Test
+	public void adaptiveTrackerOnlyTracksDueUsers() throws InterruptedException {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTracker().setPollingInterval(Duration.ofSeconds(1));
+		properties.getTracker().getAdaptive().setEnabled(true);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties, registry);
+		InternalTestHelper.setInternalUserNumber(10);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties, registry);
+		Tracker tracker = tourGuideService.tracker;
+
+		awaitCycles(tracker, 1);
+		// Tous les utilisateurs étaient dus au premier cycle ; seul le premier l'est encore au suivant
+		List<User> users = tourGuideService.getAllUsers();
+		users.forEach(user -> user.setNextTrackingMillis(Long.MAX_VALUE));
+		users.get(0).setNextTrackingMillis(0);
+		awaitCycles(tracker, 2);
+		tracker.stopTracking();
+
+		assertEquals(1, tracker.getLastCycleUsers());
+		assertEquals(9, tracker.getLastCycleSavedPolls());
+		assertEquals(9, registry.get(TourGuideMetrics.TRACKER_POLLS_SAVED).counter().count());
+		assertTrue(users.get(0).getNextTrackingMillis() > 0);
+	}
+
+	@Test
+	public void adaptiveTrackerLeavesUsersWithStaleLocationsDue() throws InterruptedException {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getTracker().setPollingInterval(Duration.ofSeconds(1));
+		properties.getTracker().getAdaptive().setEnabled(true);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		// GpsUtil en panne : chaque suivi renvoie la dernière position connue
+		GpsUtil unavailableGpsUtil = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				throw new IllegalStateException("GpsUtil unavailable");
+			}
+		};
+		RewardsService rewardsService = new RewardsService(unavailableGpsUtil, new RewardCentral(), properties,
+				registry);
+		InternalTestHelper.setInternalUserNumber(10);
+		TourGuideService tourGuideService = new TourGuideService(unavailableGpsUtil, rewardsService, properties,
+				registry);
+		Tracker tracker = tourGuideService.tracker;
+
+		awaitCycles(tracker, 1);
+		tracker.stopTracking();
+
+		// Aucun utilisateur n'a été réellement suivi : tous échouent et restent dus au cycle suivant
+		assertEquals(10, tracker.getLastCycleFailures());
+		assertEquals(10, registry.get(TourGuideMetrics.TRACKER_FAILURES).counter().count());
+		assertTrue(tourGuideService.getAllUsers().stream().allMatch(user -> user.getNextTrackingMillis() == 0));
+		assertTrue(tourGuideService.getAllUsers().stream().allMatch(user -> user.getVisitedLocations().size() == 3));
+	}
+
+	private static void awaitCycles(Tracker tracker, long cycles) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+		while (tracker.getCompletedCycles() < cycles && System.currentTimeMillis() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(20);
+		}
+	}
+
+	/**
+	 * Utilisateur dont l'historique contient les positions données, à cinq minutes d'intervalle jusqu'à now.
+	 */
+	private static User userAt(long now, Location... locations) {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		for (int i = 0; i < locations.length; i++) {
+			long time = now - TimeUnit.MINUTES.toMillis(5L * (locations.length - 1 - i));
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), locations[i], new Date(time)));
+		}
+		return user;
+	}
+}
@@ -0,0 +1,104 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
+
+public class TestUser {
+
+	@Test
+	public void visitedLocationHistoryIsBounded() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com", new RetentionPolicy(3, null));
+		for (int i = 0; i < 5; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i, i), new Date()));
+		}
+
+		VisitedLocationHistory history = user.getVisitedLocationHistory();
+		assertEquals(3, user.getVisitedLocations().size());
+		assertEquals(5, history.getAppendedCount());
+		assertEquals(4, user.getLastVisitedLocation().location.latitude);
+
+		List<Double> latitudes = new ArrayList<>();
+		user.getVisitedLocations().forEach(v -> latitudes.add(v.location.latitude));
+		assertEquals(List.of(2.0, 3.0, 4.0), latitudes);
+
+		// Les séquences déjà évincées sont ignorées
+		List<Double> since = new ArrayList<>();
+		assertEquals(1, history.forEachBetween(1, 4, v -> since.add(v.location.latitude)));
+		assertEquals(List.of(2.0, 3.0), since);
+	}
+
+	@Test
+	public void visitedLocationHistoryExpiresOldLocations() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com",
+				new RetentionPolicy(10, Duration.ofDays(1)));
+		Date old = new Date(System.currentTimeMillis() - Duration.ofDays(2).toMillis());
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(0, 0), old));
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(1, 1), old));
+		assertEquals(1, user.getVisitedLocations().size());
+
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(2, 2), new Date()));
+		assertEquals(1, user.getVisitedLocations().size());
+		assertEquals(2, user.getLastVisitedLocation().location.latitude);
+	}
+
+	@Test
+	public void visitedLocationHistoryReportsEvictedSequences() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com", new RetentionPolicy(2, null));
+		VisitedLocationHistory history = user.getVisitedLocationHistory();
+		long watermark = history.getAppendedCount();
+		for (int i = 0; i < 5; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i, i), new Date()));
+		}
+
+		// Plus de positions ajoutées que la capacité depuis le watermark : les trois premières ont été évincées
+		List<Double> evaluated = new ArrayList<>();
+		assertEquals(3, history.forEachBetween(watermark, history.getAppendedCount(),
+				v -> evaluated.add(v.location.latitude)));
+		assertEquals(List.of(3.0, 4.0), evaluated);
+		assertEquals(0, history.forEachBetween(3, 5, v -> {
+		}));
+		assertEquals(2, history.forEachBetween(0, 2, v -> {
+		}));
+
+		// Même chose pour les positions expirées
+		User expiring = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com",
+				new RetentionPolicy(10, Duration.ofDays(1)));
+		Date old = new Date(System.currentTimeMillis() - Duration.ofDays(2).toMillis());
+		expiring.addToVisitedLocations(new VisitedLocation(expiring.getUserId(), new Location(0, 0), old));
+		expiring.addToVisitedLocations(new VisitedLocation(expiring.getUserId(), new Location(1, 1), new Date()));
+		assertEquals(1, expiring.getVisitedLocationHistory().forEachBetween(0, 2, v -> {
+		}));
+	}
+
+	@Test
+	public void visitedLocationHistoryGrowsUpToCapacity() {
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com", new RetentionPolicy(10, null));
+		VisitedLocationHistory history = user.getVisitedLocationHistory();
+		for (int i = 0; i < 25; i++) {
+			user.addToVisitedLocations(new VisitedLocation(user.getUserId(), new Location(i, i), new Date()));
+			List<Double> latitudes = new ArrayList<>();
+			history.forEach(v -> latitudes.add(v.location.latitude));
+			List<Double> expected = new ArrayList<>();
+			for (int j = Math.max(0, i - 9); j <= i; j++) {
+				expected.add((double) j);
+			}
+			// L'ordre et les séquences sont conservés à chaque agrandissement du buffer, puis une fois la capacité atteinte
+			assertEquals(expected, latitudes);
+		}
+		assertEquals(10, history.getCapacity());
+		assertEquals(25, history.getAppendedCount());
+	}
+}
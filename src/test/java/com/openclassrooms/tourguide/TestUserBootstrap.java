@@ -0,0 +1,107 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gpsUtil.GpsUtil;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.user.User;
+
+public class TestUserBootstrap {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void seededBootstrapIsReproducibleAcrossModes() throws Exception {
+		InternalTestHelper.setInternalUserNumber(1000);
+		TourGuideService sync = newTourGuideService(bootstrap(TourGuideProperties.Bootstrap.Mode.SYNC, 42L, null));
+		assertTrue(sync.isUsersLoaded());
+		assertEquals(1000, sync.getAllUsers().size());
+
+		TourGuideService async = newTourGuideService(bootstrap(TourGuideProperties.Bootstrap.Mode.ASYNC, 42L, null));
+		async.getUsersLoaded().get(10, TimeUnit.SECONDS);
+		assertEquals(1000, async.getAllUsers().size());
+
+		for (String userName : new String[] { "internalUser0", "internalUser500", "internalUser999" }) {
+			assertSameUser(sync.getUser(userName), async.getUser(userName));
+		}
+	}
+
+	@Test
+	public void lazyBootstrapCreatesInternalUsersOnDemand() {
+		InternalTestHelper.setInternalUserNumber(1000);
+		TourGuideService eager = newTourGuideService(bootstrap(TourGuideProperties.Bootstrap.Mode.SYNC, 7L, null));
+		TourGuideService lazy = newTourGuideService(bootstrap(TourGuideProperties.Bootstrap.Mode.LAZY, 7L, null));
+
+		assertTrue(lazy.isUsersLoaded());
+		assertEquals(0, lazy.getAllUsers().size());
+		User user = lazy.getUser("internalUser123");
+		assertSameUser(eager.getUser("internalUser123"), user);
+		assertEquals(user, lazy.getUser("internalUser123"));
+		assertEquals(user, lazy.getUserById(user.getUserId()));
+		assertEquals(1, lazy.getAllUsers().size());
+
+		assertNull(lazy.getUser("internalUser1000"));
+		assertNull(lazy.getUser("internalUser0123"));
+		assertNull(lazy.getUser("jon"));
+	}
+
+	@Test
+	public void bootstrapLoadsPregeneratedSnapshotFile() {
+		InternalTestHelper.setInternalUserNumber(100);
+		String snapshotFile = directory.resolve("internal-users.bin").toString();
+		TourGuideService generated = newTourGuideService(
+				bootstrap(TourGuideProperties.Bootstrap.Mode.SYNC, 1L, snapshotFile));
+		assertTrue(Files.exists(Path.of(snapshotFile)));
+
+		// Autre graine : les utilisateurs ne peuvent venir que du fichier
+		TourGuideService loaded = newTourGuideService(
+				bootstrap(TourGuideProperties.Bootstrap.Mode.SYNC, 2L, snapshotFile));
+		assertEquals(100, loaded.getAllUsers().size());
+		assertSameUser(generated.getUser("internalUser42"), loaded.getUser("internalUser42"));
+	}
+
+	private static void assertSameUser(User expected, User actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getUserId(), actual.getUserId());
+		assertEquals(expected.getUserName(), actual.getUserName());
+		assertEquals(expected.getVisitedLocations().size(), actual.getVisitedLocations().size());
+		for (int i = 0; i < expected.getVisitedLocations().size(); i++) {
+			assertEquals(expected.getVisitedLocations().get(i).location.latitude,
+					actual.getVisitedLocations().get(i).location.latitude);
+			assertEquals(expected.getVisitedLocations().get(i).location.longitude,
+					actual.getVisitedLocations().get(i).location.longitude);
+		}
+	}
+
+	private static TourGuideProperties bootstrap(TourGuideProperties.Bootstrap.Mode mode, Long seed,
+			String snapshotFile) {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.getBootstrap().setMode(mode);
+		properties.getBootstrap().setSeed(seed);
+		properties.getBootstrap().setSnapshotFile(snapshotFile);
+		return properties;
+	}
+
+	private static TourGuideService newTourGuideService(TourGuideProperties properties) {
+		GpsUtil gpsUtil = new GpsUtil();
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral());
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties);
+		tourGuideService.tracker.stopTracking();
+		return tourGuideService;
+	}
+}
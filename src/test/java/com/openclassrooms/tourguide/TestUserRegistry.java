@@ -0,0 +1,79 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserRegistry;
+
+public class TestUserRegistry {
+
+	@Test
+	public void concurrentAddsAreIndexedByNameAndId() {
+		UserRegistry registry = new UserRegistry(16);
+		List<User> users = IntStream.range(0, 20_000)
+				.mapToObj(i -> new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"))
+				.collect(Collectors.toList());
+
+		// Chaque utilisateur est ajouté deux fois, depuis des threads différents
+		CompletableFuture.allOf(IntStream.range(0, 8)
+				.mapToObj(t -> CompletableFuture.runAsync(() -> users.forEach(registry::add)))
+				.toArray(CompletableFuture[]::new)).join();
+
+		assertEquals(users.size(), registry.size());
+		for (User user : users) {
+			assertSame(user, registry.getByName(user.getUserName()));
+			assertSame(user, registry.getById(user.getUserId()));
+		}
+		assertFalse(registry.add(new User(UUID.randomUUID(), "user0", "000", "user0@tourGuide.com")));
+
+		UserRegistry.Stats stats = registry.getStats();
+		assertEquals(16, stats.shards());
+		assertEquals(users.size(), stats.users());
+		assertTrue(stats.minShardSize() > 0);
+		assertTrue(stats.maxShardSize() < users.size() / 4);
+	}
+
+	@Test
+	public void viewIsStableWhileUsersAreAdded() {
+		UserRegistry registry = new UserRegistry(8);
+		for (int i = 0; i < 1000; i++) {
+			registry.add(new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"));
+		}
+		List<User> view = registry.view();
+		for (int i = 1000; i < 5000; i++) {
+			registry.add(new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"));
+		}
+
+		assertEquals(1000, view.size());
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < view.size(); i++) {
+			names.add(view.get(i).getUserName());
+		}
+		assertEquals(1000, names.size());
+		assertTrue(names.stream().allMatch(name -> Integer.parseInt(name.substring(4)) < 1000));
+		// Découpage en lots sans copie, comme le Tracker
+		Set<String> chunked = new HashSet<>();
+		view.subList(0, 500).forEach(user -> chunked.add(user.getUserName()));
+		view.subList(500, 1000).forEach(user -> chunked.add(user.getUserName()));
+		assertEquals(names, chunked);
+		assertThrows(UnsupportedOperationException.class, () -> view.add(view.get(0)));
+
+		assertEquals(5000, registry.view().size());
+		assertEquals(5000, StreamSupport.stream(registry.spliterator(), true).count());
+	}
+}
@@ -0,0 +1,335 @@
+package com.openclassrooms.tourguide;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import gpsUtil.GpsUtil;
+import gpsUtil.location.Attraction;
+import gpsUtil.location.Location;
+import gpsUtil.location.VisitedLocation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rewardCentral.RewardCentral;
+import com.openclassrooms.tourguide.config.TourGuideProperties;
+import com.openclassrooms.tourguide.helper.InternalTestHelper;
+import com.openclassrooms.tourguide.persistence.EventLog;
+import com.openclassrooms.tourguide.persistence.UserStateStore;
+import com.openclassrooms.tourguide.service.RewardsService;
+import com.openclassrooms.tourguide.service.TourGuideService;
+import com.openclassrooms.tourguide.user.User;
+import com.openclassrooms.tourguide.user.UserReward;
+import com.openclassrooms.tourguide.user.VisitedLocationHistory.RetentionPolicy;
+
+public class TestUserStateStore {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void recoversSnapshotAndLogTail() throws IOException {
+		TourGuideProperties.Persistence properties = persistence(1024);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		Attraction attraction = new Attraction("Disneyland", "Anaheim", "CA", 33.817595, -117.922008);
+
+		try (UserStateStore store = new UserStateStore(properties)) {
+			store.userAdded(user);
+			for (int i = 0; i < 3; i++) {
+				VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(i, i), new Date(1000 + i));
+				user.addToVisitedLocations(visitedLocation);
+				store.locationVisited(visitedLocation);
+			}
+			store.snapshot(List.of(user));
+
+			// Après le snapshot : assez d'événements pour remplir plusieurs segments de 1 Ko
+			for (int i = 3; i < 100; i++) {
+				VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(i, i), new Date(1000 + i));
+				user.addToVisitedLocations(visitedLocation);
+				store.locationVisited(visitedLocation);
+			}
+			UserReward reward = new UserReward(user.getLastVisitedLocation(), attraction, 42);
+			user.addUserReward(reward);
+			store.rewardGranted(user.getUserId(), reward);
+			// Rejoué en double (présent aussi dans le snapshot) : sans effet
+			store.locationVisited(user.getLastVisitedLocation());
+		}
+
+		try (UserStateStore store = new UserStateStore(properties)) {
+			List<User> users = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(1, users.size());
+			User recovered = users.get(0);
+			assertEquals(user.getUserId(), recovered.getUserId());
+			assertEquals(user.getUserName(), recovered.getUserName());
+			assertEquals(100, recovered.getVisitedLocations().size());
+			assertEquals(user.getLastVisitedLocation().timeVisited, recovered.getLastVisitedLocation().timeVisited);
+			assertEquals(1, recovered.getUserRewards().size());
+			assertEquals(42, recovered.getUserRewards().get(0).getRewardPoints());
+			assertEquals("Disneyland", recovered.getUserRewards().get(0).attraction.attractionName);
+		}
+	}
+
+	@Test
+	public void tourGuideServiceRestoresUsersAfterRestart() {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.setPersistence(persistence(1024 * 1024));
+		properties.getPersistence().setEnabled(true);
+		GpsUtil gpsUtil = new GpsUtil();
+		InternalTestHelper.setInternalUserNumber(20);
+
+		TourGuideService first = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()), properties);
+		first.tracker.stopTracking();
+		User user = first.getAllUsers().get(0);
+		first.trackUserLocation(user).join();
+		first.getUserStateStore().flush();
+
+		TourGuideService second = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()), properties);
+		second.tracker.stopTracking();
+		User restored = second.getUser(user.getUserName());
+
+		assertEquals(20, second.getAllUsers().size());
+		assertEquals(user.getUserId(), restored.getUserId());
+		assertEquals(4, restored.getVisitedLocations().size());
+		assertEquals(user.getLastVisitedLocation().timeVisited, restored.getLastVisitedLocation().timeVisited);
+		assertTrue(second.getPositionStore().get(user.getUserId()) != null);
+		second.close();
+		first.close();
+	}
+
+	@Test
+	public void rewardsGrantedDuringSnapshotsAreRecovered() throws IOException {
+		Attraction attraction = new GpsUtil().getAttractions().get(0);
+		GpsUtil atAttraction = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				return new VisitedLocation(userId, new Location(attraction.latitude, attraction.longitude), new Date());
+			}
+		};
+		RewardCentral fastRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				return 1;
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.setPersistence(persistence(64 * 1024));
+		properties.getPersistence().setEnabled(true);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(atAttraction,
+				new RewardsService(atAttraction, fastRewardCentral, properties), properties, new SimpleMeterRegistry());
+		tourGuideService.tracker.stopTracking();
+
+		// Chaque attribution déclenche un snapshot avant d'être enregistrée en mémoire, pendant que les autres
+		// attributions sont en cours : le snapshot supprime les segments qu'il couvre
+		List<User> users = IntStream.range(0, 50)
+				.mapToObj(i -> new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com") {
+					@Override
+					public void grantReward(CompletableFuture<UserReward> claim, UserReward userReward) {
+						try {
+							tourGuideService.getUserStateStore().snapshot(tourGuideService.getAllUsers());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						super.grantReward(claim, userReward);
+					}
+				})
+				.collect(Collectors.toList());
+		users.forEach(tourGuideService::addUser);
+
+		CompletableFuture.allOf(users.stream().map(tourGuideService::trackUserLocation)
+				.toArray(CompletableFuture[]::new)).join();
+		tourGuideService.getUserStateStore().flush();
+
+		try (UserStateStore store = new UserStateStore(properties.getPersistence())) {
+			List<User> recovered = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(users.size(), recovered.size());
+			assertTrue(recovered.stream().allMatch(user -> user.getUserRewards().size() == 1));
+		}
+		tourGuideService.close();
+	}
+
+	@Test
+	public void rewardsFromDirectCalculationArePersisted() throws IOException {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.setPersistence(persistence(1024 * 1024));
+		properties.getPersistence().setEnabled(true);
+		GpsUtil gpsUtil = new GpsUtil();
+		InternalTestHelper.setInternalUserNumber(0);
+		RewardsService rewardsService = new RewardsService(gpsUtil, new RewardCentral(), properties);
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, rewardsService, properties);
+		tourGuideService.tracker.stopTracking();
+
+		Attraction attraction = gpsUtil.getAttractions().get(0);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+		user.addToVisitedLocations(new VisitedLocation(user.getUserId(), attraction, new Date()));
+		tourGuideService.addUser(user);
+		rewardsService.calculateRewardsAsync(user).join();
+		tourGuideService.getUserStateStore().flush();
+
+		try (UserStateStore store = new UserStateStore(properties.getPersistence())) {
+			List<User> recovered = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(1, recovered.size());
+			assertEquals(1, recovered.get(0).getUserRewards().size());
+			assertEquals(attraction.attractionName, recovered.get(0).getUserRewards().get(0).attraction.attractionName);
+		}
+		tourGuideService.close();
+	}
+
+	@Test
+	public void closingServiceWritesFinalSnapshot() throws IOException {
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.setPersistence(persistence(1024 * 1024));
+		properties.getPersistence().setEnabled(true);
+		GpsUtil gpsUtil = new GpsUtil();
+		InternalTestHelper.setInternalUserNumber(20);
+
+		TourGuideService tourGuideService = new TourGuideService(gpsUtil, new RewardsService(gpsUtil, new RewardCentral()),
+				properties);
+		tourGuideService.tracker.stopTracking();
+		User user = tourGuideService.getAllUsers().get(0);
+		tourGuideService.trackUserLocation(user).join();
+		tourGuideService.close();
+		// Fermeture idempotente
+		tourGuideService.close();
+
+		// Tout est dans le snapshot : il ne reste qu'un segment de journal, vide
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.filter(path -> path.toString().endsWith(".log")).count());
+		}
+		AtomicInteger tail = new AtomicInteger();
+		try (EventLog log = new EventLog(directory, properties.getPersistence().getSegmentSize())) {
+			log.replay(EventLog.Position.START, record -> tail.incrementAndGet());
+		}
+		assertEquals(0, tail.get());
+
+		try (UserStateStore store = new UserStateStore(properties.getPersistence())) {
+			List<User> recovered = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(20, recovered.size());
+			User restored = recovered.stream().filter(u -> u.getUserId().equals(user.getUserId())).findFirst().get();
+			assertEquals(4, restored.getVisitedLocations().size());
+		}
+	}
+
+	@Test
+	public void closeDrainsPipelineBeforeFinalSnapshot() throws IOException {
+		Attraction attraction = new GpsUtil().getAttractions().get(0);
+		GpsUtil atAttraction = new GpsUtil() {
+			@Override
+			public VisitedLocation getUserLocation(UUID userId) {
+				return new VisitedLocation(userId, new Location(attraction.latitude, attraction.longitude), new Date());
+			}
+		};
+		RewardCentral slowRewardCentral = new RewardCentral() {
+			@Override
+			public int getAttractionRewardPoints(UUID attractionId, UUID userId) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 1;
+			}
+		};
+		TourGuideProperties properties = new TourGuideProperties();
+		properties.setPersistence(persistence(1024 * 1024));
+		properties.getPersistence().setEnabled(true);
+		properties.getPipeline().setPointsInFlight(4);
+		InternalTestHelper.setInternalUserNumber(0);
+		TourGuideService tourGuideService = new TourGuideService(atAttraction,
+				new RewardsService(atAttraction, slowRewardCentral, properties), properties, new SimpleMeterRegistry());
+		tourGuideService.tracker.stopTracking();
+		List<User> users = IntStream.range(0, 100)
+				.mapToObj(i -> new User(UUID.randomUUID(), "user" + i, "000", "user" + i + "@tourGuide.com"))
+				.collect(Collectors.toList());
+		users.forEach(tourGuideService::addUser);
+
+		// Positions enregistrées, récompenses encore dans le pipeline
+		CompletableFuture.allOf(users.stream().map(tourGuideService::ingestUserLocation)
+				.toArray(CompletableFuture[]::new)).join();
+		tourGuideService.close();
+
+		assertTrue(users.stream().allMatch(user -> user.getUserRewards().size() == 1));
+		User late = new User(UUID.randomUUID(), "late", "000", "late@tourGuide.com");
+		assertTrue(tourGuideService.trackUserLocation(late).handle((v, e) -> e != null).join());
+		try (UserStateStore store = new UserStateStore(properties.getPersistence())) {
+			List<User> recovered = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(users.size(), recovered.size());
+			assertTrue(recovered.stream().allMatch(user -> user.getUserRewards().size() == 1));
+		}
+	}
+
+	@Test
+	public void oversizedFieldsGrowTheEncodeBuffer() throws IOException {
+		TourGuideProperties.Persistence properties = persistence(64 * 1024);
+		User user = new User(UUID.randomUUID(), "a".repeat(10_000), "000", "jon@tourGuide.com");
+		// Au-delà de ce que le format sait encoder : l'événement est écarté sans faire échouer l'appelant
+		User unencodable = new User(UUID.randomUUID(), "b".repeat(70_000), "000", "jon@tourGuide.com");
+		VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(1, 1), new Date(1000));
+
+		try (UserStateStore store = new UserStateStore(properties)) {
+			store.userAdded(user);
+			store.userAdded(unencodable);
+			store.locationVisited(visitedLocation);
+		}
+
+		try (UserStateStore store = new UserStateStore(properties)) {
+			List<User> users = store.recover(RetentionPolicy.DEFAULT);
+			assertEquals(1, users.size());
+			assertEquals(user.getUserName(), users.get(0).getUserName());
+			assertEquals(visitedLocation.timeVisited, users.get(0).getLastVisitedLocation().timeVisited);
+		}
+	}
+
+	@Test
+	public void deletedSegmentsAreUnmapped() throws IOException {
+		// Sous Windows, un segment encore projeté ne peut pas être supprimé ; sous Linux, la projection d'un fichier
+		// supprimé reste visible dans /proc/self/maps
+		Path maps = Path.of("/proc/self/maps");
+		assumeTrue(Files.isReadable(maps));
+		TourGuideProperties.Persistence properties = persistence(1024);
+		User user = new User(UUID.randomUUID(), "jon", "000", "jon@tourGuide.com");
+
+		try (UserStateStore store = new UserStateStore(properties)) {
+			store.userAdded(user);
+			for (int i = 0; i < 100; i++) {
+				VisitedLocation visitedLocation = new VisitedLocation(user.getUserId(), new Location(i, i), new Date(1000 + i));
+				user.addToVisitedLocations(visitedLocation);
+				store.locationVisited(visitedLocation);
+			}
+			store.snapshot(List.of(user));
+
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(1, files.filter(path -> path.toString().endsWith(".log")).count());
+			}
+			assertEquals(1, mappingsOf(maps, directory).size());
+		}
+		assertEquals(List.of(), mappingsOf(maps, directory));
+	}
+
+	private static List<String> mappingsOf(Path maps, Path directory) throws IOException {
+		try (Stream<String> lines = Files.lines(maps)) {
+			return lines.filter(line -> line.contains(directory.toString())).collect(Collectors.toList());
+		}
+	}
+
+	private TourGuideProperties.Persistence persistence(int segmentSize) {
+		TourGuideProperties.Persistence properties = new TourGuideProperties.Persistence();
+		properties.setDirectory(directory.toString());
+		properties.setSegmentSize(segmentSize);
+		return properties;
+	}
+}